@@ -0,0 +1,72 @@
+package smartsave.api;
+
+import smartsave.modelo.Producto;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Operaciones contra la tienda de Mercadona que necesita MercadonaApiServicio.
+ *
+ * Hay dos implementaciones: ClienteMercadonaPuente, que pasa por el microservicio
+ * Python (mercadona_bridge.py), y ClienteMercadonaDirecto, que habla con la API de
+ * la tienda y con Algolia desde la propia JVM. Se elige con la propiedad
+ * -Dsmartsave.mercadona.cliente=puente|directo (por defecto, puente).
+ *
+ * Los métodos bloquean; MercadonaApiServicio los llama desde su ejecutor de E/S.
+ */
+public interface ClienteMercadona {
+    String PROPIEDAD_CLIENTE = "smartsave.mercadona.cliente";
+
+    static boolean usaClienteDirecto() {
+        return "directo".equalsIgnoreCase(System.getProperty(PROPIEDAD_CLIENTE, "puente"));
+    }
+
+    static ClienteMercadona crearSegunConfiguracion() {
+        return usaClienteDirecto() ? new ClienteMercadonaDirecto() : new ClienteMercadonaPuente();
+    }
+
+    /**
+     * @return futuro que se completa con true cuando el cliente puede atender peticiones, o con false si no podrá
+     */
+    CompletableFuture<Boolean> esperarDisponibilidad();
+
+    boolean isDisponible();
+
+    List<Producto> buscar(String termino, String codigoPostal, int limite) throws IOException;
+
+    /**
+     * @return mapa término -> productos; un término sin resultados puede no aparecer
+     */
+    Map<String, List<Producto>> buscarLote(List<String> terminos, String codigoPostal, int limite) throws IOException;
+
+    List<Producto> obtenerNovedades(String codigoPostal, int limite) throws IOException;
+
+    /**
+     * @return el producto, o null si no existe
+     */
+    Producto obtenerDetalle(Long productoId, String codigoPostal) throws IOException;
+
+    /**
+     * @return mapa id -> producto, sin los ids que no existen
+     */
+    Map<Long, Producto> obtenerDetalles(Collection<Long> productoIds, String codigoPostal) throws IOException;
+
+    /**
+     * @return ids de las categorías de la tienda que contienen productos (las de segundo nivel)
+     */
+    List<Long> obtenerCategorias(String codigoPostal) throws IOException;
+
+    /**
+     * @return todos los productos de la categoría, vacío si no existe
+     */
+    List<Producto> obtenerProductosCategoria(Long categoriaId, String codigoPostal) throws IOException;
+
+    /**
+     * @return código del almacén de Mercadona que sirve a ese código postal (p. ej. "mad1")
+     */
+    String obtenerAlmacen(String codigoPostal) throws IOException;
+}
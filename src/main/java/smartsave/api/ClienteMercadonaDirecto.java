@@ -0,0 +1,358 @@
+package smartsave.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import smartsave.modelo.Producto;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Cliente que consulta Mercadona desde la JVM, sin el microservicio Python.
+ *
+ * Hace lo mismo que mercadona_bridge.py con mercapy: el almacén se obtiene
+ * cambiando el código postal en la API de la tienda (cabecera x-customer-wh),
+ * las búsquedas van al índice de Algolia de ese almacén y el detalle y las
+ * novedades a la API de la tienda. Las URLs y las claves de Algolia se pueden
+ * cambiar con las propiedades smartsave.mercadona.*.
+ */
+public class ClienteMercadonaDirecto implements ClienteMercadona {
+    private static final String URL_TIENDA = System.getProperty("smartsave.mercadona.urlTienda", "https://tienda.mercadona.es/api");
+    private static final String ALGOLIA_APP_ID = System.getProperty("smartsave.mercadona.algolia.appId", "7UZJKL1DJ0");
+    private static final String ALGOLIA_API_KEY = System.getProperty("smartsave.mercadona.algolia.apiKey", "9d8f2e39e90df472b4f2e559a116fe17");
+    private static final String URL_ALGOLIA = System.getProperty("smartsave.mercadona.algolia.url", "https://" + ALGOLIA_APP_ID + "-dsn.algolia.net");
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final String CABECERA_ALMACEN = "x-customer-wh";
+    private static final String ALMACEN_POR_DEFECTO = "mad1";
+
+    private final OkHttpClient httpClient;
+    private final String urlTienda;
+    private final String urlAlgolia;
+    private final String algoliaAppId;
+    private final String algoliaApiKey;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, String> almacenesPorCodigoPostal = new ConcurrentHashMap<>();
+
+    public ClienteMercadonaDirecto() {
+        this(new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build(), URL_TIENDA, URL_ALGOLIA, ALGOLIA_APP_ID, ALGOLIA_API_KEY);
+    }
+
+    ClienteMercadonaDirecto(OkHttpClient httpClient, String urlTienda, String urlAlgolia, String algoliaAppId, String algoliaApiKey) {
+        this.httpClient = httpClient;
+        this.urlTienda = urlTienda;
+        this.urlAlgolia = urlAlgolia;
+        this.algoliaAppId = algoliaAppId;
+        this.algoliaApiKey = algoliaApiKey;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> esperarDisponibilidad() {
+        return CompletableFuture.completedFuture(true);
+    }
+
+    @Override
+    public boolean isDisponible() {
+        return true;
+    }
+
+    @Override
+    public List<Producto> buscar(String termino, String codigoPostal, int limite) throws IOException {
+        ObjectNode cuerpo = objectMapper.createObjectNode();
+        cuerpo.put("params", parametrosAlgolia(termino, limite));
+
+        Request request = peticionAlgolia("/1/indexes/" + indiceAlgolia(codigoPostal) + "/query", cuerpo);
+        JsonNode raiz = ClienteMercadonaPuente.ejecutarPeticion(httpClient, request, objectMapper::readTree);
+        return convertirProductos(raiz.path("hits"), limite);
+    }
+
+    /**
+     * Todas las búsquedas del lote van en una sola petición multi-consulta de Algolia.
+     */
+    @Override
+    public Map<String, List<Producto>> buscarLote(List<String> terminos, String codigoPostal, int limite) throws IOException {
+        String indice = indiceAlgolia(codigoPostal);
+        ObjectNode cuerpo = objectMapper.createObjectNode();
+        ArrayNode consultas = cuerpo.putArray("requests");
+        for (String termino : terminos) {
+            consultas.addObject()
+                    .put("indexName", indice)
+                    .put("params", parametrosAlgolia(termino, limite));
+        }
+
+        JsonNode raiz = ClienteMercadonaPuente.ejecutarPeticion(httpClient, peticionAlgolia("/1/indexes/*/queries", cuerpo), objectMapper::readTree);
+        JsonNode resultados = raiz.path("results");
+
+        Map<String, List<Producto>> productosPorTermino = new HashMap<>();
+        for (int i = 0; i < terminos.size() && i < resultados.size(); i++) {
+            productosPorTermino.put(terminos.get(i), convertirProductos(resultados.get(i).path("hits"), limite));
+        }
+        return productosPorTermino;
+    }
+
+    @Override
+    public List<Producto> obtenerNovedades(String codigoPostal, int limite) throws IOException {
+        String url = urlTienda + "/home/new-arrivals/?lang=es&wh=" + obtenerAlmacen(codigoPostal);
+        JsonNode raiz = ClienteMercadonaPuente.ejecutarPeticion(httpClient, new Request.Builder().url(url).build(), objectMapper::readTree);
+
+        List<JsonNode> nodos = new ArrayList<>();
+        recogerProductos(raiz, nodos);
+        List<Producto> productos = new ArrayList<>();
+        for (JsonNode nodo : nodos) {
+            if (productos.size() >= limite) break;
+            Producto producto = convertirProducto(nodo);
+            if (producto != null) productos.add(producto);
+        }
+        return productos;
+    }
+
+    @Override
+    public Producto obtenerDetalle(Long productoId, String codigoPostal) throws IOException {
+        try (Response response = httpClient.newCall(peticionDetalle(productoId, obtenerAlmacen(codigoPostal))).execute()) {
+            return leerDetalle(response);
+        }
+    }
+
+    /**
+     * La tienda no tiene endpoint por lotes, así que los detalles se piden en
+     * paralelo con las llamadas asíncronas de OkHttp: el Dispatcher limita cuántas
+     * van a la vez y este hilo solo espera, como mucho lo que tardaría una petición.
+     * Las que no hayan terminado para entonces se cancelan y se dan por no encontradas.
+     */
+    @Override
+    public Map<Long, Producto> obtenerDetalles(Collection<Long> productoIds, String codigoPostal) throws IOException {
+        String almacen = obtenerAlmacen(codigoPostal);
+
+        Map<Long, Call> llamadas = new HashMap<>();
+        Map<Long, CompletableFuture<Producto>> pendientes = new HashMap<>();
+        for (Long productoId : productoIds) {
+            Call llamada = httpClient.newCall(peticionDetalle(productoId, almacen));
+            CompletableFuture<Producto> detalle = new CompletableFuture<>();
+            llamada.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    detalle.completeExceptionally(e);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try (response) {
+                        detalle.complete(leerDetalle(response));
+                    } catch (IOException | RuntimeException e) {
+                        detalle.completeExceptionally(e);
+                    }
+                }
+            });
+            llamadas.put(productoId, llamada);
+            pendientes.put(productoId, detalle);
+        }
+
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMaximaMs());
+        Map<Long, Producto> detalles = new HashMap<>();
+        try {
+            for (Map.Entry<Long, CompletableFuture<Producto>> pendiente : pendientes.entrySet()) {
+                try {
+                    Producto producto = pendiente.getValue().get(Math.max(0, limite - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (producto != null) detalles.put(pendiente.getKey(), producto);
+                } catch (ExecutionException e) {
+                    System.err.println("Error obteniendo el detalle del producto " + pendiente.getKey() + ": " + e.getCause().getMessage());
+                } catch (TimeoutException e) {
+                    System.err.println("Sin respuesta a tiempo para el detalle del producto " + pendiente.getKey());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Petición de detalles interrumpida");
+        } finally {
+            llamadas.values().forEach(Call::cancel);
+        }
+        return detalles;
+    }
+
+    /**
+     * Lo que puede tardar una petición con los timeouts del cliente.
+     */
+    private long esperaMaximaMs() {
+        if (httpClient.callTimeoutMillis() > 0) return httpClient.callTimeoutMillis();
+        return httpClient.connectTimeoutMillis() + httpClient.readTimeoutMillis();
+    }
+
+    private Request peticionDetalle(Long productoId, String almacen) {
+        return new Request.Builder().url(urlTienda + "/products/" + productoId + "/?lang=es&wh=" + almacen).build();
+    }
+
+    private Producto leerDetalle(Response response) throws IOException {
+        if (response.code() == 404) {
+            return null;
+        }
+        if (!response.isSuccessful() || response.body() == null) {
+            throw new IOException("Código inesperado del servidor HTTP: " + response);
+        }
+        return convertirProducto(objectMapper.readTree(response.body().byteStream()));
+    }
+
+    /**
+     * El árbol de categorías tiene dos niveles y solo las del segundo llevan productos.
+     */
+    @Override
+    public List<Long> obtenerCategorias(String codigoPostal) throws IOException {
+        String url = urlTienda + "/categories/?lang=es&wh=" + obtenerAlmacen(codigoPostal);
+        JsonNode raiz = ClienteMercadonaPuente.ejecutarPeticion(httpClient, new Request.Builder().url(url).build(), objectMapper::readTree);
+
+        List<Long> categorias = new ArrayList<>();
+        for (JsonNode seccion : raiz.path("results")) {
+            for (JsonNode categoria : seccion.path("categories")) {
+                if (categoria.path("id").canConvertToLong()) categorias.add(categoria.path("id").asLong());
+            }
+        }
+        return categorias;
+    }
+
+    /**
+     * Los productos de una categoría vienen agrupados en subcategorías y no traen
+     * su propia lista de categorías, así que se les asigna la subcategoría.
+     */
+    @Override
+    public List<Producto> obtenerProductosCategoria(Long categoriaId, String codigoPostal) throws IOException {
+        String url = urlTienda + "/categories/" + categoriaId + "/?lang=es&wh=" + obtenerAlmacen(codigoPostal);
+        try (Response response = httpClient.newCall(new Request.Builder().url(url).build()).execute()) {
+            if (response.code() == 404) {
+                return new ArrayList<>();
+            }
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("Código inesperado del servidor HTTP: " + response);
+            }
+            JsonNode raiz = objectMapper.readTree(response.body().byteStream());
+
+            List<Producto> productos = new ArrayList<>();
+            for (JsonNode subcategoria : raiz.path("categories")) {
+                String nombreSubcategoria = subcategoria.path("name").asText(raiz.path("name").asText(""));
+                for (JsonNode nodo : subcategoria.path("products")) {
+                    Producto producto = convertirProducto(nodo, nombreSubcategoria, false);
+                    if (producto != null) productos.add(producto);
+                }
+            }
+            return productos;
+        }
+    }
+
+    /**
+     * Se resuelve una sola vez por código postal; si la tienda no responde se usa
+     * el mismo almacén por defecto que el microservicio Python, sin cachearlo.
+     */
+    @Override
+    public String obtenerAlmacen(String codigoPostal) {
+        String almacen = almacenesPorCodigoPostal.get(codigoPostal);
+        if (almacen != null) {
+            return almacen;
+        }
+
+        ObjectNode cuerpo = objectMapper.createObjectNode().put("new_postal_code", codigoPostal);
+        Request request = new Request.Builder()
+                .url(urlTienda + "/postal-codes/actions/change-pc/")
+                .put(RequestBody.create(cuerpo.toString(), JSON))
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            almacen = response.header(CABECERA_ALMACEN);
+            if (response.isSuccessful() && almacen != null && !almacen.isBlank()) {
+                almacenesPorCodigoPostal.put(codigoPostal, almacen);
+                return almacen;
+            }
+            System.err.println("La tienda de Mercadona no devolvió almacén para el código postal " + codigoPostal + ": " + response);
+        } catch (IOException e) {
+            System.err.println("Error resolviendo el almacén de Mercadona para " + codigoPostal + ": " + e.getMessage());
+        }
+        return ALMACEN_POR_DEFECTO;
+    }
+
+    private String indiceAlgolia(String codigoPostal) {
+        return "products_prod_" + obtenerAlmacen(codigoPostal) + "_es";
+    }
+
+    private static String parametrosAlgolia(String termino, int limite) {
+        return "query=" + URLEncoder.encode(termino, StandardCharsets.UTF_8) + "&hitsPerPage=" + limite;
+    }
+
+    private Request peticionAlgolia(String ruta, JsonNode cuerpo) {
+        return new Request.Builder()
+                .url(urlAlgolia + ruta)
+                .header("X-Algolia-Application-Id", algoliaAppId)
+                .header("X-Algolia-API-Key", algoliaApiKey)
+                .post(RequestBody.create(cuerpo.toString(), JSON))
+                .build();
+    }
+
+    private static List<Producto> convertirProductos(JsonNode nodos, int limite) {
+        List<Producto> productos = new ArrayList<>();
+        for (JsonNode nodo : nodos) {
+            if (productos.size() >= limite) break;
+            Producto producto = convertirProducto(nodo);
+            if (producto != null) productos.add(producto);
+        }
+        return productos;
+    }
+
+    /**
+     * Las novedades llegan agrupadas en secciones; se recorren buscando los objetos
+     * que tienen pinta de producto (id, display_name y price_instructions).
+     */
+    private static void recogerProductos(JsonNode nodo, List<JsonNode> destino) {
+        if (nodo.isObject() && nodo.has("id") && nodo.has("display_name") && nodo.has("price_instructions")) {
+            destino.add(nodo);
+        } else if (nodo.isContainerNode()) {
+            nodo.forEach(hijo -> recogerProductos(hijo, destino));
+        }
+    }
+
+    /**
+     * Mismo formato de producto en Algolia y en la API de la tienda.
+     */
+    static Producto convertirProducto(JsonNode nodo) {
+        return convertirProducto(nodo, "", true);
+    }
+
+    /**
+     * Sin cache para el recorrido del catálogo: ver MercadonaAdapter.crearProductoSinCache.
+     */
+    static Producto convertirProducto(JsonNode nodo, String categoriaPorDefecto, boolean usarCache) {
+        String id = nodo.hasNonNull("id") ? nodo.get("id").asText() : null;
+        String nombre = nodo.path("display_name").asText("");
+
+        String marca = nodo.path("brand").asText("");
+        if (marca.isEmpty()) marca = nodo.path("details").path("brand").asText("");
+        if (marca.isEmpty()) marca = "Mercadona";
+
+        String categoria = nodo.path("categories").path(0).path("name").asText(categoriaPorDefecto);
+        double precio = nodo.path("price_instructions").path("unit_price").asDouble(0.0);
+
+        return usarCache
+                ? MercadonaAdapter.crearProducto(id, nombre, marca, categoria, precio)
+                : MercadonaAdapter.crearProductoSinCache(id, nombre, marca, categoria, precio);
+    }
+}
@@ -0,0 +1,313 @@
+package smartsave.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import smartsave.modelo.Producto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cliente que pasa por el microservicio Python supervisado por MercadonaBridgeSupervisor.
+ *
+ * Con -Dsmartsave.mercadona.formato=cbor las respuestas se piden en CBOR en vez de
+ * JSON; si el microservicio no tiene cbor2 contesta en JSON y se lee igual, porque
+ * el lector se elige por el Content-Type de cada respuesta.
+ */
+public class ClienteMercadonaPuente implements ClienteMercadona {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    public static final String PROPIEDAD_FORMATO = "smartsave.mercadona.formato";
+    private static final String ACEPTA_JSON = "application/json";
+    private static final String ACEPTA_CBOR = "application/cbor, application/json;q=0.5";
+
+    //solo se piden al microservicio los campos que lee LectorRespuestasMercadona
+    private static final String CAMPOS_PRODUCTO = "id,name,brand,category,unit_price";
+    private static final long MAXIMO_RESPUESTAS_VALIDADAS = 1000;
+
+    private final MercadonaBridgeSupervisor supervisor;
+    private final OkHttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LectorRespuestasMercadona lectorJson = new LectorRespuestasMercadona(objectMapper.getFactory());
+    private final LectorRespuestasMercadona lectorCbor = new LectorRespuestasMercadona(new CBORMapper().getFactory());
+
+    //almacen de cada codigo postal, negociado una vez con /warehouse y enviado despues como token 'wh'
+    private final Map<String, String> almacenesPorCodigoPostal = new ConcurrentHashMap<>();
+
+    //codigos postales cuyo /warehouse ha fallado: hasta que caduquen no se vuelve a preguntar
+    //y las peticiones van solo con el codigo postal, sin duplicar el trafico con el microservicio degradado
+    private static final long ESPERA_REINTENTO_ALMACEN_MS = TimeUnit.MINUTES.toMillis(1);
+    private final Cache<String, Boolean> almacenesFallidos = Caffeine.newBuilder()
+            .expireAfterWrite(ESPERA_REINTENTO_ALMACEN_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+    //ultima respuesta leida de cada peticion con su ETag: si el microservicio contesta 304 se reutiliza sin descargar ni parsear
+    private final Cache<String, RespuestaValidada> respuestasValidadas = Caffeine.newBuilder()
+            .maximumSize(MAXIMO_RESPUESTAS_VALIDADAS)
+            .build();
+
+    private record RespuestaValidada(String etag, Object valor) {}
+
+    public ClienteMercadonaPuente() {
+        this.supervisor = MercadonaBridgeSupervisor.getInstancia();
+        //tantas conexiones como trabajadores tiene el microservicio: un lote de busquedas
+        //sale en paralelo y las conexiones siguen vivas para la siguiente rafaga
+        int trabajadores = MercadonaBridgeSupervisor.TRABAJADORES;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(trabajadores);
+        dispatcher.setMaxRequestsPerHost(trabajadores);
+        this.httpClient = supervisor.getTransporte().configurar(new OkHttpClient.Builder())
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(trabajadores, 5, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build();
+
+        //el microservicio arranca en segundo plano; hasta que este listo se responde desde la cache
+        supervisor.iniciar();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> esperarDisponibilidad() {
+        return supervisor.esperarListo();
+    }
+
+    @Override
+    public boolean isDisponible() {
+        return supervisor.isDisponible();
+    }
+
+    @Override
+    public List<Producto> buscar(String termino, String codigoPostal, int limite) throws IOException {
+        String url = supervisor.getUrlBase() + "/search?q=" + URLEncoder.encode(termino, StandardCharsets.UTF_8)
+                + "&postcode=" + codigoPostal + parametroAlmacen(codigoPostal) + "&limit=" + limite + "&fields=" + CAMPOS_PRODUCTO;
+        return realizarPeticionHttp(url, LectorRespuestasMercadona::leerProductos);
+    }
+
+    @Override
+    public Map<String, List<Producto>> buscarLote(List<String> terminos, String codigoPostal, int limite) throws IOException {
+        ObjectNode cuerpo = objectMapper.createObjectNode();
+        terminos.forEach(cuerpo.putArray("terms")::add);
+        cuerpo.put("postcode", codigoPostal);
+        cuerpo.put("warehouse", almacenConocido(codigoPostal));
+        cuerpo.put("limit", limite);
+        cuerpo.put("fields", CAMPOS_PRODUCTO);
+
+        return realizarPeticionHttp(supervisor.getUrlBase() + "/search_batch", objectMapper.writeValueAsString(cuerpo),
+                LectorRespuestasMercadona::leerLote);
+    }
+
+    @Override
+    public List<Producto> obtenerNovedades(String codigoPostal, int limite) throws IOException {
+        String url = supervisor.getUrlBase() + "/new?postcode=" + codigoPostal + parametroAlmacen(codigoPostal) + "&limit=" + limite + "&fields=" + CAMPOS_PRODUCTO;
+        return realizarPeticionHttp(url, LectorRespuestasMercadona::leerProductos);
+    }
+
+    @Override
+    public Producto obtenerDetalle(Long productoId, String codigoPostal) throws IOException {
+        String url = supervisor.getUrlBase() + "/detail?id=" + productoId + "&postcode=" + codigoPostal + parametroAlmacen(codigoPostal)
+                + "&fields=" + CAMPOS_PRODUCTO;
+        List<Producto> productos = realizarPeticionHttp(url, LectorRespuestasMercadona::leerProductos);
+        return productos.isEmpty() ? null : productos.get(0);
+    }
+
+    @Override
+    public Map<Long, Producto> obtenerDetalles(Collection<Long> productoIds, String codigoPostal) throws IOException {
+        ObjectNode cuerpo = objectMapper.createObjectNode();
+        productoIds.forEach(cuerpo.putArray("ids")::add);
+        cuerpo.put("postcode", codigoPostal);
+        cuerpo.put("warehouse", almacenConocido(codigoPostal));
+        cuerpo.put("fields", CAMPOS_PRODUCTO);
+
+        Map<String, List<Producto>> respuesta = realizarPeticionHttp(supervisor.getUrlBase() + "/detail_batch",
+                objectMapper.writeValueAsString(cuerpo), LectorRespuestasMercadona::leerLote);
+
+        Map<Long, Producto> detalles = new HashMap<>();
+        respuesta.forEach((id, productos) -> {
+            if (!productos.isEmpty()) detalles.put(Long.valueOf(id), productos.get(0));
+        });
+        return detalles;
+    }
+
+    @Override
+    public List<Long> obtenerCategorias(String codigoPostal) throws IOException {
+        String url = supervisor.getUrlBase() + "/categories?postcode=" + codigoPostal + parametroAlmacen(codigoPostal);
+        JsonNode raiz = realizarPeticionHttp(url, LectorRespuestasMercadona::leerArbol);
+        if (!raiz.path("success").asBoolean()) {
+            throw new IOException("La API Python devolvió un error: " + raiz.path("error").asText("Error desconocido de API"));
+        }
+
+        List<Long> categorias = new ArrayList<>();
+        for (JsonNode categoria : raiz.path("data")) {
+            if (categoria.path("id").canConvertToLong()) {
+                categorias.add(categoria.path("id").asLong());
+            }
+        }
+        return categorias;
+    }
+
+    @Override
+    public List<Producto> obtenerProductosCategoria(Long categoriaId, String codigoPostal) throws IOException {
+        String url = supervisor.getUrlBase() + "/category?id=" + categoriaId + "&postcode=" + codigoPostal + parametroAlmacen(codigoPostal)
+                + "&fields=" + CAMPOS_PRODUCTO;
+        return realizarPeticionHttp(url, LectorRespuestasMercadona::leerProductosCatalogo);
+    }
+
+    @Override
+    public String obtenerAlmacen(String codigoPostal) throws IOException {
+        String almacen = almacenesPorCodigoPostal.get(codigoPostal);
+        if (almacen != null) {
+            return almacen;
+        }
+
+        JsonNode raiz = realizarPeticionHttp(supervisor.getUrlBase() + "/warehouse?postcode=" + codigoPostal, LectorRespuestasMercadona::leerArbol);
+        if (!raiz.path("success").asBoolean()) {
+            throw new IOException("La API Python devolvió un error: " + raiz.path("error").asText("Error desconocido de API"));
+        }
+        almacen = raiz.path("data").path("warehouse").asText();
+        //un almacen vacio no se guarda: se trata como fallo y se vuelve a negociar mas tarde
+        if (almacen.isBlank()) {
+            throw new IOException("La API Python no devolvió almacén para el código postal " + codigoPostal);
+        }
+        almacenesPorCodigoPostal.put(codigoPostal, almacen);
+        return almacen;
+    }
+
+    /**
+     * Almacén del código postal si ya se conoce o se puede negociar; si no, null y
+     * el microservicio lo resuelve a partir del código postal como antes. Tras un
+     * fallo no se vuelve a negociar hasta pasado ESPERA_REINTENTO_ALMACEN_MS.
+     */
+    private String almacenConocido(String codigoPostal) {
+        String almacen = almacenesPorCodigoPostal.get(codigoPostal);
+        if (almacen != null || almacenesFallidos.getIfPresent(codigoPostal) != null) {
+            return almacen;
+        }
+        try {
+            return obtenerAlmacen(codigoPostal);
+        } catch (IOException e) {
+            almacenesFallidos.put(codigoPostal, Boolean.TRUE);
+            System.err.println("No se pudo negociar el almacén de Mercadona para " + codigoPostal + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String parametroAlmacen(String codigoPostal) {
+        String almacen = almacenConocido(codigoPostal);
+        return almacen != null ? "&wh=" + URLEncoder.encode(almacen, StandardCharsets.UTF_8) : "";
+    }
+
+    /**
+     * Lee el cuerpo de una respuesta HTTP directamente del stream, sin copiarlo antes a un String.
+     */
+    @FunctionalInterface
+    interface LectorCuerpo<T> {
+        T leer(InputStream cuerpo) throws IOException;
+    }
+
+    /**
+     * Lectura de una respuesta del microservicio con el lector que corresponda a su formato.
+     */
+    @FunctionalInterface
+    private interface LecturaRespuesta<T> {
+        T leer(LectorRespuestasMercadona lector, InputStream cuerpo) throws IOException;
+    }
+
+    private <T> T realizarPeticionHttp(String url, LecturaRespuesta<T> lector) throws IOException {
+        return realizarPeticionCondicional(url, new Request.Builder().url(url), lector);
+    }
+
+    private <T> T realizarPeticionHttp(String url, String cuerpoJson, LecturaRespuesta<T> lector) throws IOException {
+        return realizarPeticionCondicional(url + "\n" + cuerpoJson,
+                new Request.Builder().url(url).post(RequestBody.create(cuerpoJson, JSON)), lector);
+    }
+
+    /**
+     * Revalida con If-None-Match la última respuesta de la misma petición. OkHttp
+     * ya pide y descomprime gzip por su cuenta.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T realizarPeticionCondicional(String clave, Request.Builder peticion, LecturaRespuesta<T> lector) throws IOException {
+        //se consulta en cada peticion para poder cambiar de formato sin reiniciar
+        boolean pedirCbor = "cbor".equalsIgnoreCase(System.getProperty(PROPIEDAD_FORMATO, "json"));
+        peticion.header("Accept", pedirCbor ? ACEPTA_CBOR : ACEPTA_JSON);
+
+        RespuestaValidada anterior = respuestasValidadas.getIfPresent(clave);
+        if (anterior != null) {
+            peticion.header("If-None-Match", anterior.etag());
+        }
+
+        try (Response response = httpClient.newCall(peticion.build()).execute()) {
+            if (response.code() == 304 && anterior != null) {
+                return (T) copiarRespuesta(anterior.valor());
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Código inesperado del servidor HTTP: " + response);
+            }
+            if (response.body() == null) {
+                throw new IOException("Respuesta sin cuerpo del servidor HTTP: " + response);
+            }
+            MediaType tipo = response.body().contentType();
+            boolean esCbor = tipo != null && "cbor".equalsIgnoreCase(tipo.subtype());
+            T valor = lector.leer(esCbor ? lectorCbor : lectorJson, response.body().byteStream());
+            String etag = response.header("ETag");
+            if (etag != null) {
+                respuestasValidadas.put(clave, new RespuestaValidada(etag, copiarRespuesta(valor)));
+            }
+            return valor;
+        }
+    }
+
+    /**
+     * Los llamantes pueden modificar las listas y mapas que reciben, así que la
+     * respuesta guardada para revalidar nunca se entrega tal cual: se guarda una
+     * copia y cada 304 devuelve otra. Los Producto sí se comparten, como en la
+     * cache de MercadonaAdapter.
+     */
+    private static Object copiarRespuesta(Object valor) {
+        if (valor instanceof List<?> lista) {
+            return new ArrayList<>(lista);
+        }
+        if (valor instanceof Map<?, ?> mapa) {
+            Map<Object, Object> copia = new HashMap<>();
+            mapa.forEach((clave, elemento) -> copia.put(clave, copiarRespuesta(elemento)));
+            return copia;
+        }
+        if (valor instanceof JsonNode arbol) {
+            return arbol.deepCopy();
+        }
+        return valor;
+    }
+
+    static <T> T ejecutarPeticion(OkHttpClient httpClient, Request request, LectorCuerpo<T> lector) throws IOException {
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Código inesperado del servidor HTTP: " + response);
+            }
+            if (response.body() == null) {
+                throw new IOException("Respuesta sin cuerpo del servidor HTTP: " + response);
+            }
+            return lector.leer(response.body().byteStream());
+        }
+    }
+}
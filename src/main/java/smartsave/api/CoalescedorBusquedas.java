@@ -0,0 +1,107 @@
+package smartsave.api;
+
+import smartsave.modelo.Producto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Agrupa las búsquedas que llegan dentro de una ventana corta de tiempo
+ * y las resuelve con una sola petición al microservicio, repartiendo
+ * después los resultados al CompletableFuture de cada término.
+ */
+class CoalescedorBusquedas {
+
+    private final long ventanaMs;
+    private final int tamanoMaximoLote;
+    private final Function<List<String>, Map<String, List<Producto>>> ejecutorLote;
+    private final Executor ejecutor;
+    private final ScheduledExecutorService planificador;
+
+    private final Object lock = new Object();
+    private Map<String, CompletableFuture<List<Producto>>> pendientes = new LinkedHashMap<>();
+    private ScheduledFuture<?> envioProgramado;
+
+    CoalescedorBusquedas(long ventanaMs, int tamanoMaximoLote,
+                         Function<List<String>, Map<String, List<Producto>>> ejecutorLote,
+                         Executor ejecutor, ScheduledExecutorService planificador) {
+        this.ventanaMs = ventanaMs;
+        this.tamanoMaximoLote = tamanoMaximoLote;
+        this.ejecutorLote = ejecutorLote;
+        this.ejecutor = ejecutor;
+        this.planificador = planificador;
+    }
+
+    CompletableFuture<List<Producto>> encolar(String termino) {
+        Map<String, CompletableFuture<List<Producto>>> loteCompleto = null;
+        CompletableFuture<List<Producto>> futuro;
+
+        synchronized (lock) {
+            futuro = pendientes.get(termino);
+            if (futuro != null) {
+                return futuro;
+            }
+
+            futuro = new CompletableFuture<>();
+            pendientes.put(termino, futuro);
+
+            if (pendientes.size() >= tamanoMaximoLote) {
+                loteCompleto = drenarPendientes();
+            } else if (envioProgramado == null) {
+                envioProgramado = planificador.schedule(this::vaciar, ventanaMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (loteCompleto != null) {
+            enviar(loteCompleto);
+        }
+        return futuro;
+    }
+
+    void vaciar() {
+        Map<String, CompletableFuture<List<Producto>>> lote;
+        synchronized (lock) {
+            lote = drenarPendientes();
+        }
+        if (!lote.isEmpty()) {
+            enviar(lote);
+        }
+    }
+
+    private Map<String, CompletableFuture<List<Producto>>> drenarPendientes() {
+        Map<String, CompletableFuture<List<Producto>>> lote = pendientes;
+        pendientes = new LinkedHashMap<>();
+        if (envioProgramado != null) {
+            envioProgramado.cancel(false);
+            envioProgramado = null;
+        }
+        return lote;
+    }
+
+    private void enviar(Map<String, CompletableFuture<List<Producto>>> lote) {
+        try {
+            ejecutor.execute(() -> resolver(lote));
+        } catch (Exception e) {
+            lote.values().forEach(f -> f.completeExceptionally(e));
+        }
+    }
+
+    private void resolver(Map<String, CompletableFuture<List<Producto>>> lote) {
+        try {
+            Map<String, List<Producto>> resultados = ejecutorLote.apply(new ArrayList<>(lote.keySet()));
+            lote.forEach((termino, futuro) ->
+                    futuro.complete(resultados.getOrDefault(termino, Collections.emptyList())));
+        } catch (Exception e) {
+            lote.values().forEach(f -> f.completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package smartsave.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Peticiones con cobertura (hedging): si la primera petición no ha respondido
+ * cuando se cumple la espera indicada (el p95 observado), se lanza una copia;
+ * gana la primera que responda bien y la otra se cancela interrumpiendo su hilo.
+ *
+ * La primera petición se hace en el hilo del llamante, así que sin cobertura no
+ * hay cambio de hilo ni se ocupa otro del ejecutor. La copia la lanza un
+ * temporizador del planificador en ejecutorCopias, que no debe ser el ejecutor
+ * donde corren los llamantes: si fuera un pool fijo, los llamantes esperando a
+ * sus copias encoladas podrían ocuparlo entero. En un hilo virtual la
+ * interrupción cierra el socket y corta la lectura de OkHttp; en un hilo de
+ * plataforma la primera petición sigue hasta terminar y la copia solo sirve si
+ * aquella falla.
+ *
+ * Para no duplicar demasiado tráfico hay un presupuesto: las coberturas nunca
+ * superan porcentajeMaximo de las peticiones.
+ */
+class CoberturaPeticiones {
+    //cada tanto se reducen los contadores a la mitad para que el presupuesto siga el trafico reciente
+    private static final long PETICIONES_POR_PERIODO = 1000;
+
+    private final double porcentajeMaximo;
+    private final ScheduledExecutorService planificador;
+    private final ExecutorService ejecutorCopias;
+
+    private long peticiones;
+    private long coberturas;
+    private long coberturasTotales;
+    private long coberturasGanadoras;
+
+    CoberturaPeticiones(double porcentajeMaximo, ScheduledExecutorService planificador, ExecutorService ejecutorCopias) {
+        this.porcentajeMaximo = porcentajeMaximo;
+        this.planificador = planificador;
+        this.ejecutorCopias = ejecutorCopias;
+    }
+
+    interface Llamada<T> {
+        T ejecutar() throws IOException;
+    }
+
+    /**
+     * Ejecuta la llamada y, si tarda más de esperaAntesDeCubrirMs, lanza una copia.
+     * Con una espera negativa (sin latencias suficientes) o sin presupuesto se
+     * comporta como una llamada normal. Si la primera falla, a la copia se la
+     * espera como mucho esperaMaximaMs.
+     */
+    <T> T ejecutar(Llamada<T> llamada, long esperaAntesDeCubrirMs, long esperaMaximaMs) throws IOException {
+        contarPeticion();
+        if (porcentajeMaximo <= 0 || esperaAntesDeCubrirMs < 0) {
+            return llamada.ejecutar();
+        }
+
+        Carrera<T> carrera = new Carrera<>(Thread.currentThread());
+        ScheduledFuture<?> temporizador = planificador.schedule(() -> lanzarCopia(llamada, carrera),
+                esperaAntesDeCubrirMs, TimeUnit.MILLISECONDS);
+        T resultado = null;
+        Exception fallo = null;
+        try {
+            resultado = llamada.ejecutar();
+        } catch (IOException | RuntimeException e) {
+            fallo = e;
+        } finally {
+            temporizador.cancel(false);
+            carrera.terminarPrimera();
+        }
+
+        if (fallo == null) {
+            carrera.cancelarCopia();
+            return resultado;
+        }
+        //la primera ha fallado (o la ha interrumpido la copia al ganar): queda la copia, si se lanzo
+        if (carrera.esperarCopia(esperaMaximaMs)) {
+            contarCoberturaGanadora();
+            return carrera.resultadoCopia;
+        }
+        carrera.cancelarCopia();
+        if (fallo instanceof IOException io) throw io;
+        throw (RuntimeException) fallo;
+    }
+
+    private <T> void lanzarCopia(Llamada<T> llamada, Carrera<T> carrera) {
+        synchronized (carrera) {
+            if (!carrera.primeraEnCurso || !reservarCobertura()) return;
+            carrera.copia = ejecutorCopias.submit(() -> {
+                try {
+                    carrera.copiaTerminada(llamada.ejecutar(), null);
+                } catch (IOException | RuntimeException e) {
+                    carrera.copiaTerminada(null, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Estado compartido entre la primera petición, que corre en el hilo del
+     * llamante, y su copia.
+     */
+    private static class Carrera<T> {
+        private final Thread llamante;
+        private boolean primeraEnCurso = true;
+        private boolean llamanteInterrumpido;
+
+        private Future<?> copia;
+        private boolean copiaTerminada;
+        private T resultadoCopia;
+        private Exception falloCopia;
+
+        Carrera(Thread llamante) {
+            this.llamante = llamante;
+        }
+
+        synchronized void copiaTerminada(T resultado, Exception fallo) {
+            copiaTerminada = true;
+            resultadoCopia = resultado;
+            falloCopia = fallo;
+            //si la copia gana, se corta la primera para que el llamante no siga esperandola
+            if (fallo == null && primeraEnCurso) {
+                llamanteInterrumpido = true;
+                llamante.interrupt();
+            }
+            notifyAll();
+        }
+
+        void terminarPrimera() {
+            boolean limpiarInterrupcion;
+            synchronized (this) {
+                primeraEnCurso = false;
+                limpiarInterrupcion = llamanteInterrumpido;
+            }
+            //la interrupcion la ha puesto la copia y no debe salir de aqui
+            if (limpiarInterrupcion) Thread.interrupted();
+        }
+
+        /**
+         * @return true si hay copia y ha terminado bien antes de esperaMaximaMs
+         */
+        synchronized boolean esperarCopia(long esperaMaximaMs) throws InterruptedIOException {
+            if (copia == null) return false;
+            long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMaximaMs);
+            try {
+                while (!copiaTerminada) {
+                    long restanteMs = TimeUnit.NANOSECONDS.toMillis(limite - System.nanoTime());
+                    if (restanteMs <= 0) return false;
+                    wait(restanteMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Petición interrumpida");
+            }
+            return falloCopia == null;
+        }
+
+        synchronized void cancelarCopia() {
+            if (copia != null && !copiaTerminada) copia.cancel(true);
+        }
+    }
+
+    private synchronized void contarPeticion() {
+        peticiones++;
+        if (peticiones >= PETICIONES_POR_PERIODO) {
+            peticiones /= 2;
+            coberturas /= 2;
+        }
+    }
+
+    private synchronized boolean reservarCobertura() {
+        if (coberturas + 1 > peticiones * porcentajeMaximo / 100.0) {
+            return false;
+        }
+        coberturas++;
+        coberturasTotales++;
+        return true;
+    }
+
+    private synchronized void contarCoberturaGanadora() {
+        coberturasGanadoras++;
+    }
+
+    synchronized long getCoberturasLanzadas() {
+        return coberturasTotales;
+    }
+
+    synchronized long getCoberturasGanadoras() {
+        return coberturasGanadoras;
+    }
+}
@@ -0,0 +1,178 @@
+package smartsave.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import smartsave.modelo.Producto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lee las respuestas del microservicio token a token, directamente del stream
+ * HTTP, y crea los Producto sin pasar por un String ni por un árbol JsonNode.
+ *
+ * Las respuestas tienen la forma {"success": ..., "data": ..., "error": ...};
+ * Flask ordena las claves, así que "data" puede llegar antes que "success" y
+ * el resultado solo se da por bueno al terminar de leer el objeto.
+ *
+ * El mismo código lee CBOR si se construye con la fábrica de un CBORMapper.
+ */
+class LectorRespuestasMercadona {
+
+    private final JsonFactory jsonFactory;
+
+    LectorRespuestasMercadona(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Respuesta de /search, /new o /detail: "data" es una lista de productos o un único producto.
+     */
+    List<Producto> leerProductos(InputStream entrada) throws IOException {
+        return leerProductos(entrada, true);
+    }
+
+    /**
+     * Respuesta de /category: como leerProductos, pero los productos se crean
+     * siempre nuevos y no pasan por la cache de MercadonaAdapter.
+     */
+    List<Producto> leerProductosCatalogo(InputStream entrada) throws IOException {
+        return leerProductos(entrada, false);
+    }
+
+    private List<Producto> leerProductos(InputStream entrada, boolean usarCache) throws IOException {
+        List<Producto> productos = new ArrayList<>();
+        try (JsonParser parser = jsonFactory.createParser(entrada)) {
+            boolean exito = leerSobre(parser, "data", () -> leerListaOProducto(parser, productos, usarCache));
+            return exito ? productos : new ArrayList<>();
+        }
+    }
+
+    /**
+     * Respuesta de /search_batch: "data" es un objeto término -> lista de productos.
+     */
+    Map<String, List<Producto>> leerLote(InputStream entrada) throws IOException {
+        Map<String, List<Producto>> resultados = new HashMap<>();
+        try (JsonParser parser = jsonFactory.createParser(entrada)) {
+            boolean exito = leerSobre(parser, "data", () -> {
+                if (parser.currentToken() != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    return;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String termino = parser.currentName();
+                    parser.nextToken();
+                    List<Producto> productos = new ArrayList<>();
+                    leerListaOProducto(parser, productos, true);
+                    resultados.put(termino, productos);
+                }
+            });
+            return exito ? resultados : new HashMap<>();
+        }
+    }
+
+    /**
+     * Lista de productos sin sobre, tal y como se guarda en la cache en disco.
+     */
+    List<Producto> leerListaProductos(byte[] json) throws IOException {
+        List<Producto> productos = new ArrayList<>();
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            parser.nextToken();
+            leerListaOProducto(parser, productos, true);
+        }
+        return productos;
+    }
+
+    /**
+     * Respuesta completa como árbol, para las que no traen productos (/warehouse, /categories).
+     * La fábrica tiene que venir de un ObjectMapper.
+     */
+    JsonNode leerArbol(InputStream entrada) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(entrada)) {
+            JsonNode raiz = parser.readValueAsTree();
+            return raiz != null ? raiz : MissingNode.getInstance();
+        }
+    }
+
+    private interface LectorDatos {
+        void leer() throws IOException;
+    }
+
+    private boolean leerSobre(JsonParser parser, String campoDatos, LectorDatos lectorDatos) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Respuesta del microservicio sin objeto raíz");
+        }
+
+        boolean exito = false;
+        String error = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String campo = parser.currentName();
+            parser.nextToken();
+            if (campoDatos.equals(campo)) {
+                lectorDatos.leer();
+            } else if ("success".equals(campo)) {
+                exito = parser.getValueAsBoolean();
+            } else if ("error".equals(campo)) {
+                error = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (!exito) {
+            System.err.println("La API Python devolvió un error: " + (error != null ? error : "Error desconocido de API"));
+        }
+        return exito;
+    }
+
+    private void leerListaOProducto(JsonParser parser, List<Producto> destino, boolean usarCache) throws IOException {
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            agregarSiValido(leerProducto(parser, usarCache), destino);
+        } else if (parser.currentToken() == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.currentToken() == JsonToken.START_OBJECT) {
+                    agregarSiValido(leerProducto(parser, usarCache), destino);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else {
+            parser.skipChildren();
+        }
+    }
+
+    private Producto leerProducto(JsonParser parser, boolean usarCache) throws IOException {
+        String id = null;
+        String nombre = "";
+        String marca = "Mercadona";
+        String categoria = "";
+        double precio = 0.0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String campo = parser.currentName();
+            parser.nextToken();
+            switch (campo) {
+                case "id" -> id = parser.getValueAsString();
+                case "name" -> nombre = parser.getValueAsString("");
+                case "brand" -> marca = parser.getValueAsString("Mercadona");
+                case "category" -> categoria = parser.getValueAsString("");
+                case "unit_price" -> precio = parser.getValueAsDouble(0.0);
+                default -> parser.skipChildren();
+            }
+        }
+        return usarCache
+                ? MercadonaAdapter.crearProducto(id, nombre, marca, categoria, precio)
+                : MercadonaAdapter.crearProductoSinCache(id, nombre, marca, categoria, precio);
+    }
+
+    private static void agregarSiValido(Producto producto, List<Producto> destino) {
+        if (producto != null) destino.add(producto);
+    }
+}
@@ -1,21 +1,28 @@
 package smartsave.api;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import smartsave.modelo.Producto;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 public class MercadonaAdapter {
 
-    
-    private static final Map<String, Producto> CACHE_PRODUCTOS = new ConcurrentHashMap<>();
-    
+    //cada producto caduca una hora despues de crearse y, si hay demasiados, se desalojan los menos usados
     private static final long CACHE_TTL_MS = TimeUnit.HOURS.toMillis(1);
-    
-    private static volatile long ultimaLimpiezaCacheMs = System.currentTimeMillis();
+    private static final long CACHE_MAXIMO_PRODUCTOS = 5000;
+
+    private static final Cache<String, Producto> CACHE_PRODUCTOS = Caffeine.newBuilder()
+            .maximumSize(CACHE_MAXIMO_PRODUCTOS)
+            .expireAfterWrite(CACHE_TTL_MS, TimeUnit.MILLISECONDS)
+            .recordStats()
+            .build();
 
     
     private static final Map<String, String> MAPEO_CATEGORIAS = new HashMap<>();
@@ -39,32 +46,59 @@ public class MercadonaAdapter {
         
     }
 
-    
-    private static class ProductoCacheado {
-        final Producto producto;
-        final long timestamp;
-
-        ProductoCacheado(Producto producto) {
-            this.producto = producto;
-            this.timestamp = System.currentTimeMillis();
-        }
-    }
-
     public static Producto convertirNodoAProducto(JsonNode productNode) {
         try {
-            
             String idMercadona = productNode.has("id") ? productNode.get("id").asText() : null;
-            if (idMercadona != null && CACHE_PRODUCTOS.containsKey(idMercadona)) {
-                return CACHE_PRODUCTOS.get(idMercadona);
-            }
-
-            limpiarCacheAntigua();
-
             String nombre = productNode.has("name") ? productNode.get("name").asText() : "";
             String marca = productNode.has("brand") ? productNode.get("brand").asText() : "Mercadona";
             String categoriaOriginal = productNode.has("category") ? productNode.get("category").asText() : "";
             double precio = productNode.has("unit_price") ? productNode.get("unit_price").asDouble() : 0.0;
 
+            return crearProducto(idMercadona, nombre, marca, categoriaOriginal, precio);
+        } catch (Exception e) {
+            System.err.println("Error convirtiendo producto de Mercadona: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Construye el Producto a partir de los campos ya extraídos de la respuesta,
+     * vengan de un árbol JsonNode o del lector en streaming.
+     *
+     * Si ya hay uno en cache con los mismos datos se devuelve ese; si el precio u
+     * otro campo ha cambiado se crea uno nuevo y sustituye al cacheado, que puede
+     * estar en uso y no se modifica.
+     */
+    static Producto crearProducto(String idMercadona, String nombre, String marca, String categoriaOriginal, double precio) {
+        Producto cacheado = idMercadona != null ? CACHE_PRODUCTOS.getIfPresent(idMercadona) : null;
+        if (cacheado != null && coincide(cacheado, nombre, marca, categoriaOriginal, precio)) {
+            return cacheado;
+        }
+        Producto producto = construirProducto(idMercadona, nombre, marca, categoriaOriginal, precio);
+        if (producto != null && idMercadona != null) {
+            CACHE_PRODUCTOS.put(idMercadona, producto);
+        }
+        return producto;
+    }
+
+    /**
+     * Como crearProducto pero sin pasar por la cache: para el recorrido del
+     * catálogo, que lee miles de productos una sola vez y no debe desalojar los
+     * que está usando la interfaz.
+     */
+    static Producto crearProductoSinCache(String idMercadona, String nombre, String marca, String categoriaOriginal, double precio) {
+        return construirProducto(idMercadona, nombre, marca, categoriaOriginal, precio);
+    }
+
+    private static boolean coincide(Producto cacheado, String nombre, String marca, String categoriaOriginal, double precio) {
+        return cacheado.getPrecioBD() != null && cacheado.getPrecioBD().compareTo(BigDecimal.valueOf(precio)) == 0
+                && cacheado.getNombre().equals(limpiarTexto(nombre))
+                && cacheado.getMarca().equals(limpiarTexto(marca))
+                && cacheado.getCategoria().equals(mapearCategoria(categoriaOriginal));
+    }
+
+    private static Producto construirProducto(String idMercadona, String nombre, String marca, String categoriaOriginal, double precio) {
+        try {
             String categoriaAdaptada = mapearCategoria(categoriaOriginal);
 
             Producto producto = new Producto();
@@ -93,10 +127,6 @@ public class MercadonaAdapter {
 
             configurarInfoNutricional(producto, categoriaAdaptada);
 
-            if (idMercadona != null) {
-                CACHE_PRODUCTOS.put(idMercadona, producto);
-            }
-
             
             if (producto.getNombre().isEmpty() || producto.getMarca().isEmpty() ||
                     producto.getCategoria().isEmpty() || producto.getPrecioBD() == null ||
@@ -112,6 +142,22 @@ public class MercadonaAdapter {
         }
     }
 
+    /**
+     * Operación inversa a convertirNodoAProducto: genera el JSON con el mismo formato
+     * que devuelve el microservicio, para poder persistir productos ya convertidos.
+     */
+    public static ObjectNode convertirProductoANodo(Producto producto) {
+        ObjectNode nodo = JsonNodeFactory.instance.objectNode();
+        if (producto.getId() != null) {
+            nodo.put("id", producto.getId().toString());
+        }
+        nodo.put("name", producto.getNombre());
+        nodo.put("brand", producto.getMarca());
+        nodo.put("category", producto.getCategoria());
+        nodo.put("unit_price", producto.getPrecioBD());
+        return nodo;
+    }
+
     private static String mapearCategoria(String categoriaOriginal) {
         if (categoriaOriginal == null || categoriaOriginal.isEmpty()) {
             return "Otros";
@@ -224,25 +270,23 @@ public class MercadonaAdapter {
         }
     }
 
-    private static void limpiarCacheAntigua() {
-        long tiempoActual = System.currentTimeMillis();
-
-        
-        if (tiempoActual - ultimaLimpiezaCacheMs > TimeUnit.MINUTES.toMillis(30)) {
-            CACHE_PRODUCTOS.entrySet().removeIf(entry ->
-                    tiempoActual - ultimaLimpiezaCacheMs > CACHE_TTL_MS);
-
-            ultimaLimpiezaCacheMs = tiempoActual;
-        }
-    }
-
     private static String limpiarTexto(String texto) {
         if (texto == null) return "";
         return texto.trim();
     }
 
     public static void limpiarCache() {
-        CACHE_PRODUCTOS.clear();
-        ultimaLimpiezaCacheMs = System.currentTimeMillis();
+        CACHE_PRODUCTOS.invalidateAll();
+    }
+
+    public static long tamanoCache() {
+        return CACHE_PRODUCTOS.estimatedSize();
+    }
+
+    /**
+     * Aciertos, fallos y desalojos de la cache de productos desde que arrancó la aplicación.
+     */
+    public static CacheStats obtenerEstadisticasCache() {
+        return CACHE_PRODUCTOS.stats();
     }
 }
\ No newline at end of file
@@ -1,272 +1,405 @@
 package smartsave.api;
 
+import smartsave.config.EjecutoresConfig;
 import smartsave.modelo.Producto;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
 import java.io.*;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class MercadonaApiServicio {
 
     private final ObjectMapper objectMapper;
+    private final LectorRespuestasMercadona lectorRespuestas;
     private final ExecutorService executorService;
-    private Path pythonScriptPath;
-    private Process pythonServerProcess;
     private final String codigoPostal;
-    private boolean apiDisponible;
-
-    private final OkHttpClient httpClient;
-    private static final String API_BASE_URL = "http://127.0.0.1:5000";
-    private final MercadonaSearchCache searchCache = new MercadonaSearchCache();
+    private final ClienteMercadona cliente;
+    private final MercadonaCircuitBreaker circuitBreaker = new MercadonaCircuitBreaker();
+    //las descargas de categorias del recorrido del catalogo son mucho mas grandes que una busqueda: con su propio
+    //circuito no inflan el p99 ni el p95 de las busquedas ni pueden abrir el circuito de la interfaz
+    private final MercadonaCircuitBreaker circuitBreakerCatalogo = new MercadonaCircuitBreaker("catálogo de Mercadona");
+
+    private static final int LIMITE_BUSQUEDA = 25;
+    private static final int LIMITE_NOVEDADES = 30;
+    private final MercadonaSearchCache searchCache;
+
+    //las respuestas se guardan tambien en disco para no empezar en frio tras reiniciar
+    private static final long TTL_DISCO_MS = TimeUnit.HOURS.toMillis(6);
+    private final MercadonaDiskCache diskCache = MercadonaDiskCache.getInstancia();
+
+    //las busquedas que llegan casi a la vez se mandan juntas a /search_batch
+    private static final long VENTANA_LOTE_MS = 10;
+    private static final int TAMANO_MAXIMO_LOTE = 10;
+    private final CoalescedorBusquedas coalescedor;
+
+    //detalles de producto por id, con su propia cache porque no dependen de ningun termino
+    private static final long EXPIRACION_DETALLE_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final long MAXIMO_DETALLES = 2000;
+    private final AsyncLoadingCache<Long, Producto> detalleCache;
+
+    //las busquedas que pasan del p95 observado se repiten, sin superar este porcentaje del trafico (0 lo desactiva)
+    private static final double PORCENTAJE_COBERTURAS = Double.parseDouble(
+            System.getProperty("smartsave.mercadona.cobertura.porcentaje", "5"));
+    private static final double PERCENTIL_COBERTURA = 95;
+    private final CoberturaPeticiones cobertura;
+    private final ExecutorService ejecutorCoberturas;
 
     public MercadonaApiServicio(String codigoPostal) {
+        this(codigoPostal, ClienteMercadona.crearSegunConfiguracion());
+    }
+
+    MercadonaApiServicio(String codigoPostal, ClienteMercadona cliente) {
         this.objectMapper = new ObjectMapper();
-        this.executorService = Executors.newFixedThreadPool(2);
+        this.lectorRespuestas = new LectorRespuestasMercadona(objectMapper.getFactory());
+        this.executorService = EjecutoresConfig.getEjecutorIO();
         this.codigoPostal = codigoPostal != null ? codigoPostal : "14010";
+        this.cliente = cliente;
+        //las copias van siempre en hilos virtuales: no ocupan el ejecutor de los llamantes y se cancelan cerrando su socket
+        this.ejecutorCoberturas = Executors.newVirtualThreadPerTaskExecutor();
+        this.cobertura = new CoberturaPeticiones(PORCENTAJE_COBERTURAS, EjecutoresConfig.getPlanificador(), ejecutorCoberturas);
+
+        this.coalescedor = new CoalescedorBusquedas(VENTANA_LOTE_MS, TAMANO_MAXIMO_LOTE,
+                this::buscarLote, executorService, EjecutoresConfig.getPlanificador());
+        this.searchCache = new MercadonaSearchCache(this::cargarEntradaCache, this::recargarEntradaCache, executorService);
+        this.detalleCache = Caffeine.newBuilder()
+                .executor(executorService)
+                .maximumSize(MAXIMO_DETALLES)
+                .expireAfterWrite(EXPIRACION_DETALLE_MS, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .buildAsync(new CargadorDetalles());
+        executorService.execute(this::calentarCacheDesdeDisco);
+    }
+
+    /**
+     * Lanza la petición en cuanto el cliente esté listo. Si no se pudo
+     * arrancar, devuelve directamente lo que haya en cache.
+     */
+    private <T> CompletableFuture<T> cuandoApiLista(Supplier<CompletableFuture<T>> conApi, Supplier<T> sinApi) {
+        return cuandoApiLista(circuitBreaker, conApi, sinApi);
+    }
 
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .build();
+    private <T> CompletableFuture<T> cuandoApiLista(MercadonaCircuitBreaker circuito, Supplier<CompletableFuture<T>> conApi, Supplier<T> sinApi) {
+        //con el circuito abierto no se espera a nadie: se responde con lo que haya
+        if (!circuito.admiteLlamadas()) return respuestaSinApi(sinApi);
+        CompletableFuture<Boolean> listo = cliente.esperarDisponibilidad();
+        if (listo.isDone() && !cliente.isDisponible()) return respuestaSinApi(sinApi);
+        return listo.thenCompose(disponible -> disponible ? conApi.get() : respuestaSinApi(sinApi));
+    }
 
+    private static <T> CompletableFuture<T> respuestaSinApi(Supplier<T> sinApi) {
         try {
-            this.pythonScriptPath = prepararScriptPython();
-            iniciarServidorPython();
-            this.apiDisponible = verificarDisponibilidadApi();
-        } catch (IOException e) {
-            System.err.println("Error crítico al inicializar el servidor Python: " + e.getMessage());
-            e.printStackTrace();
-            this.apiDisponible = false;
+            return CompletableFuture.completedFuture(sinApi.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
+    }
 
-        iniciarLimpiadorCache();
+    /**
+     * El recorrido del catálogo no tiene cache con la que responder: sin API
+     * falla, para no confundirlo con una categoría vacía.
+     */
+    private static <T> T catalogoNoDisponible() {
+        throw new UncheckedIOException(new IOException("Catálogo de Mercadona no disponible"));
+    }
 
-        Runtime.getRuntime().addShutdownHook(new Thread(this::cerrar));
+    public CompletableFuture<List<Producto>> buscarProductos(String termino) {
+        String terminoNormalizado = termino.toLowerCase().trim();
+        String cacheKey = MercadonaSearchCache.claveBusqueda(terminoNormalizado, codigoPostal);
+        //sin microservicio todavia se puede responder con lo recuperado de disco
+        return cuandoApiLista(() -> searchCache.get(cacheKey), () -> searchCache.obtenerSiPresente(cacheKey))
+                .exceptionally(e -> {
+                    System.err.println("Error en petición HTTP de búsqueda: " + e.getMessage());
+                    return new ArrayList<>();
+                });
     }
 
-    private Path prepararScriptPython() throws IOException {
-        try (InputStream scriptStream = MercadonaApiServicio.class.getResourceAsStream("/api/mercadona_bridge.py")) {
-            if (scriptStream == null) {
-                throw new IOException("No se pudo encontrar 'mercadona_bridge.py' en el JAR.");
-            }
-            Path tempScript = Files.createTempFile("mercadona_bridge_", ".py");
-            tempScript.toFile().deleteOnExit();
+    /**
+     * Carga una entrada de la cache a partir de su clave. La cache comparte esta
+     * carga entre todos los llamantes de la misma clave y la reutiliza para el
+     * refresco anticipado de las entradas a punto de caducar.
+     */
+    private CompletableFuture<List<Producto>> cargarEntradaCache(String cacheKey) {
+        CompletableFuture<List<Producto>> carga;
+        if (cacheKey.startsWith(MercadonaSearchCache.PREFIJO_BUSQUEDA)) {
+            carga = coalescedor.encolar(MercadonaSearchCache.terminoDeClave(cacheKey));
+        } else {
+            carga = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return llamarCliente(() -> cliente.obtenerNovedades(codigoPostal, LIMITE_NOVEDADES));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executorService);
+        }
+        return carga.thenApply(productos -> {
+            guardarEnDisco(cacheKey, productos);
+            return productos;
+        });
+    }
 
-            Files.copy(scriptStream, tempScript, StandardCopyOption.REPLACE_EXISTING);
-            return tempScript;
+    /**
+     * Refresco en segundo plano de una entrada. Las búsquedas van una a una a
+     * /search en vez de por el coalescedor: los lotes de un refresco casi nunca
+     * repiten el mismo conjunto de términos, así que el ETag del cuerpo del lote no
+     * serviría, y el de cada término sí permite que el microservicio conteste 304.
+     */
+    private CompletableFuture<List<Producto>> recargarEntradaCache(String cacheKey) {
+        if (!cacheKey.startsWith(MercadonaSearchCache.PREFIJO_BUSQUEDA)) {
+            return cargarEntradaCache(cacheKey);
         }
+        String termino = MercadonaSearchCache.terminoDeClave(cacheKey);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return llamarCliente(() -> cliente.buscar(termino, codigoPostal, LIMITE_BUSQUEDA));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executorService).thenApply(productos -> {
+            guardarEnDisco(cacheKey, productos);
+            return productos;
+        });
     }
 
-    private void iniciarServidorPython() {
+    private void guardarEnDisco(String cacheKey, List<Producto> productos) {
+        //una lista vacia suele venir de un error del microservicio, no merece sobrevivir al reinicio
+        if (productos.isEmpty()) return;
         try {
-            System.out.println("Arrancando el microservicio Python (Flask) en segundo plano...");
-            ProcessBuilder processBuilder = new ProcessBuilder("python", this.pythonScriptPath.toAbsolutePath().toString());
-            processBuilder.environment().put("PYTHONIOENCODING", "utf-8");
-            processBuilder.environment().put("LANG", "C.UTF-8");
-
-            processBuilder.redirectErrorStream(true);
-
-            this.pythonServerProcess = processBuilder.start();
-
-            Thread.sleep(2000);
-        } catch (Exception e) {
-            System.err.println("Error arrancando el servidor Flask de Python: " + e.getMessage());
+            ArrayNode nodos = objectMapper.createArrayNode();
+            productos.forEach(producto -> nodos.add(MercadonaAdapter.convertirProductoANodo(producto)));
+            diskCache.guardar(cacheKey, objectMapper.writeValueAsBytes(nodos), TTL_DISCO_MS);
+        } catch (IOException e) {
+            System.err.println("Error serializando productos para la cache en disco: " + e.getMessage());
         }
     }
 
-    private boolean verificarDisponibilidadApi() {
-        System.out.println("Verificando conexión con el microservicio Python...");
-        int intentos = 0;
-
-        while (intentos < 3) {
+    private void calentarCacheDesdeDisco() {
+        long ahora = System.currentTimeMillis();
+        int entradasCargadas = 0;
+        for (MercadonaDiskCache.EntradaDisco entrada : diskCache.cargar().values()) {
+            if (!entrada.clave().endsWith(":" + codigoPostal)) continue;
             try {
-                Request request = new Request.Builder()
-                        .url(API_BASE_URL + "/health")
-                        .build();
-
-                try (Response response = httpClient.newCall(request).execute()) {
-                    if (response.isSuccessful()) {
-                        System.out.println("¡Conexión establecida con el microservicio Python por el puerto 5000!");
-                        return true;
-                    }
+                List<Producto> productos = lectorRespuestas.leerListaProductos(entrada.valor());
+                if (!productos.isEmpty()) {
+                    searchCache.putSiAusente(entrada.clave(), productos, entrada.restanteMs(ahora));
+                    entradasCargadas++;
                 }
-            } catch (Exception e) {
-                System.out.println("Esperando a que el servidor Python esté listo... (Intento " + (intentos + 1) + ")");
+            } catch (IOException e) {
+                System.err.println("Entrada de cache en disco ilegible (" + entrada.clave() + "): " + e.getMessage());
             }
-            try { Thread.sleep(1500); } catch (InterruptedException ignored) {}
-            intentos++;
         }
+        if (entradasCargadas > 0) {
+            System.out.println("Cache de Mercadona precargada desde disco con " + entradasCargadas + " búsquedas");
+        }
+    }
 
-        System.err.println("No se pudo conectar con el microservicio Python.");
-        return false;
+    private Map<String, List<Producto>> buscarLote(List<String> terminos) {
+        try {
+            if (terminos.size() == 1) {
+                String termino = terminos.get(0);
+                Map<String, List<Producto>> resultados = new HashMap<>();
+                resultados.put(termino, llamarCliente(() -> conCobertura(() -> cliente.buscar(termino, codigoPostal, LIMITE_BUSQUEDA))));
+                return resultados;
+            }
+            return llamarCliente(() -> conCobertura(() -> cliente.buscarLote(terminos, codigoPostal, LIMITE_BUSQUEDA)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    public CompletableFuture<List<Producto>> buscarProductos(String termino) {
-        return CompletableFuture.supplyAsync(() -> {
-            if (!apiDisponible) return new ArrayList<>();
+    public CompletableFuture<List<Producto>> obtenerProductosNuevos() {
+        String cacheKey = MercadonaSearchCache.claveNovedades(codigoPostal);
+        return cuandoApiLista(() -> searchCache.get(cacheKey), () -> searchCache.obtenerSiPresente(cacheKey))
+                .exceptionally(e -> {
+                    System.err.println("Error en petición HTTP de productos nuevos: " + e.getMessage());
+                    return new ArrayList<>();
+                });
+    }
 
-            String terminoNormalizado = termino.toLowerCase().trim();
-            String cacheKey = "search:" + terminoNormalizado + ":" + codigoPostal;
-            List<Producto> productosCache = searchCache.get(cacheKey);
+    /**
+     * Obtiene un producto por su id de Mercadona.
+     * @return el producto, o null si no existe o la API no responde
+     */
+    public CompletableFuture<Producto> obtenerDetalleProducto(Long productoId) {
+        if (productoId == null) return CompletableFuture.completedFuture(null);
+        return cuandoApiLista(() -> detalleCache.get(productoId), () -> detalleCache.synchronous().getIfPresent(productoId))
+                .exceptionally(e -> {
+                    System.err.println("Error en petición HTTP de detalle del producto " + productoId + ": " + e.getMessage());
+                    return null;
+                });
+    }
 
-            if (productosCache != null) return productosCache;
+    /**
+     * Variante por lotes de obtenerDetalleProducto: los ids que no estén en cache
+     * se piden juntos en una sola llamada al cliente.
+     * @return mapa id -> producto, sin los ids que no se han encontrado
+     */
+    public CompletableFuture<Map<Long, Producto>> obtenerDetallesProductos(Collection<Long> productoIds) {
+        List<Long> ids = productoIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) return CompletableFuture.completedFuture(new HashMap<>());
+        return cuandoApiLista(() -> detalleCache.getAll(ids), () -> detalleCache.synchronous().getAllPresent(ids))
+                .<Map<Long, Producto>>thenApply(HashMap::new)
+                .exceptionally(e -> {
+                    System.err.println("Error en petición HTTP de detalles por lotes: " + e.getMessage());
+                    return new HashMap<>();
+                });
+    }
 
+    /**
+     * Ids de las categorías de la tienda, para recorrer el catálogo completo.
+     * Sin cache: solo lo usa CatalogoCrawler, que vuelca el resultado a la BD.
+     * Como obtenerProductosCategoria, pasa por el circuito del catálogo.
+     */
+    public CompletableFuture<List<Long>> obtenerCategorias() {
+        return cuandoApiLista(circuitBreakerCatalogo, () -> CompletableFuture.supplyAsync(() -> {
             try {
-                String url = API_BASE_URL + "/search?q=" + URLEncoder.encode(terminoNormalizado, StandardCharsets.UTF_8.toString())
-                        + "&postcode=" + codigoPostal + "&limit=25";
-
-                String jsonResponse = realizarPeticionHttp(url);
-                List<Producto> productos = parsearProductos(jsonResponse);
-                searchCache.put(cacheKey, productos);
-                return productos;
-            } catch (Exception e) {
-                System.err.println("Error en petición HTTP de búsqueda: " + e.getMessage());
-                return new ArrayList<>();
+                return llamarCliente(circuitBreakerCatalogo, () -> cliente.obtenerCategorias(codigoPostal));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-        }, executorService);
+        }, executorService), MercadonaApiServicio::catalogoNoDisponible);
     }
 
-    public CompletableFuture<List<Producto>> obtenerProductosNuevos() {
-        return CompletableFuture.supplyAsync(() -> {
-            if (!apiDisponible) return new ArrayList<>();
-
-            String cacheKey = "new_products:" + codigoPostal;
-            List<Producto> productosCache = searchCache.get(cacheKey);
-            if (productosCache != null) return productosCache;
-
+    public CompletableFuture<List<Producto>> obtenerProductosCategoria(Long categoriaId) {
+        return cuandoApiLista(circuitBreakerCatalogo, () -> CompletableFuture.supplyAsync(() -> {
             try {
-                // Petición GET web para productos nuevos
-                String url = API_BASE_URL + "/new?postcode=" + codigoPostal + "&limit=30";
-                String jsonResponse = realizarPeticionHttp(url);
-                List<Producto> productos = parsearProductos(jsonResponse);
-                searchCache.put(cacheKey, productos);
-                return productos;
-            } catch (Exception e) {
-                System.err.println("Error en petición HTTP de productos nuevos: " + e.getMessage());
-                return new ArrayList<>();
+                return llamarCliente(circuitBreakerCatalogo, () -> cliente.obtenerProductosCategoria(categoriaId, codigoPostal));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-        }, executorService);
+        }, executorService), MercadonaApiServicio::catalogoNoDisponible);
     }
 
-    private String realizarPeticionHttp(String url) throws IOException {
-        Request request = new Request.Builder().url(url).build();
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Código inesperado del servidor HTTP: " + response);
-            }
-            if (response.body() != null) {
-                return response.body().string();
-            }
-            return "";
+    private class CargadorDetalles implements AsyncCacheLoader<Long, Producto> {
+
+        @Override
+        public CompletableFuture<Producto> asyncLoad(Long productoId, Executor ejecutor) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return llamarCliente(() -> cliente.obtenerDetalle(productoId, codigoPostal));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ejecutor);
         }
-    }
 
-    private List<Producto> parsearProductos(String json) {
-        List<Producto> productos = new ArrayList<>();
-        try {
-            if (json == null || json.isEmpty()) return productos;
-            JsonNode root = objectMapper.readTree(json);
-
-            if (root.has("success") && root.get("success").asBoolean()) {
-                JsonNode data = root.get("data");
-                if (data != null && data.isArray()) {
-                    for (JsonNode productNode : data) {
-                        try {
-                            Producto producto = MercadonaAdapter.convertirNodoAProducto(productNode);
-                            if (producto != null) productos.add(producto);
-                        } catch (Exception e) {
-                            System.err.println("Error procesando un producto individual: " + e.getMessage());
-                        }
-                    }
+        @Override
+        public CompletableFuture<Map<Long, Producto>> asyncLoadAll(Set<? extends Long> productoIds, Executor ejecutor) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return llamarCliente(() -> cliente.obtenerDetalles(new ArrayList<>(productoIds), codigoPostal));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-            } else {
-                String errorMsg = root.has("error") ? root.get("error").asText() : "Error desconocido de API";
-                System.err.println("La API Python devolvió un error: " + errorMsg);
-            }
-        } catch (Exception e) {
-            System.err.println("Error parseando JSON: " + e.getMessage());
+            }, ejecutor);
         }
-        return productos;
     }
 
-    public boolean isApiDisponible() {
-        return apiDisponible;
+    public CacheStats obtenerEstadisticasCache() {
+        return searchCache.estadisticas();
     }
 
-    public void cerrar() {
-        //cargarse el servidor de python cuando se cierre la app
-        if (pythonServerProcess != null && pythonServerProcess.isAlive()) {
-            System.out.println("Apagando el microservicio Python...");
-            pythonServerProcess.destroy();
-        }
+    @FunctionalInterface
+    private interface LlamadaCliente<T> {
+        T ejecutar() throws IOException;
+    }
+
+    /**
+     * Pasa la llamada por el cortocircuito y le informa del resultado y la latencia.
+     */
+    private <T> T llamarCliente(LlamadaCliente<T> llamada) throws IOException {
+        return llamarCliente(circuitBreaker, llamada);
+    }
 
-        executorService.shutdown();
+    private <T> T llamarCliente(MercadonaCircuitBreaker circuito, LlamadaCliente<T> llamada) throws IOException {
+        if (!circuito.permitirLlamada()) {
+            throw new IOException("Circuito de Mercadona abierto, llamada rechazada");
+        }
+        long inicio = System.nanoTime();
+        boolean exito = false;
         try {
-            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-            Thread.currentThread().interrupt();
+            T resultado = llamada.ejecutar();
+            exito = true;
+            return resultado;
+        } finally {
+            //tambien un Error cuenta como fallo: si no, la prueba en semiabierto nunca terminaria
+            long duracionMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+            if (exito) circuito.registrarExito(duracionMs);
+            else circuito.registrarFallo(duracionMs);
         }
+    }
 
-        if (pythonScriptPath != null) {
-            try {
-                Files.deleteIfExists(pythonScriptPath);
-            } catch (IOException e) {
-                System.err.println("No se pudo eliminar el script temporal: " + pythonScriptPath);
-            }
-        }
+    /**
+     * Las búsquedas son idempotentes, así que si tardan más que el p95 se puede
+     * lanzar una copia por otra conexión y quedarse con la primera respuesta.
+     * El cortocircuito ve las dos como una sola llamada.
+     */
+    private <T> T conCobertura(CoberturaPeticiones.Llamada<T> llamada) throws IOException {
+        return cobertura.ejecutar(llamada, circuitBreaker.percentilMs(PERCENTIL_COBERTURA), circuitBreaker.timeoutMs());
     }
 
-    private static class MercadonaSearchCache {
-        private static final long CACHE_EXPIRY_MS = TimeUnit.MINUTES.toMillis(15);
-        private static class CacheEntry {
-            final List<Producto> productos;
-            final long timestamp;
-            CacheEntry(List<Producto> productos) {
-                this.productos = productos;
-                this.timestamp = System.currentTimeMillis();
-            }
-            boolean isExpired() { return System.currentTimeMillis() - timestamp > CACHE_EXPIRY_MS; }
-        }
-        private final java.util.Map<String, CacheEntry> cache = Collections.synchronizedMap(new java.util.LinkedHashMap<>(100, 0.75f, true));
+    public boolean isApiDisponible() {
+        return cliente.isDisponible() && circuitBreaker.admiteLlamadas();
+    }
 
-        List<Producto> get(String cacheKey) {
-            CacheEntry entry = cache.get(cacheKey);
-            if (entry != null && !entry.isExpired()) return new ArrayList<>(entry.productos);
-            cache.remove(cacheKey);
-            return null;
-        }
+    /**
+     * Como isApiDisponible pero para el recorrido del catálogo, que tiene su propio circuito.
+     */
+    public boolean isCatalogoDisponible() {
+        return cliente.isDisponible() && circuitBreakerCatalogo.admiteLlamadas();
+    }
 
-        void put(String cacheKey, List<Producto> productos) {
-            cache.put(cacheKey, new CacheEntry(new ArrayList<>(productos)));
-            if (cache.size() > 100) cache.remove(cache.keySet().iterator().next());
-        }
+    /**
+     * Tiempo que conviene esperar a una respuesta de Mercadona, derivado del p99
+     * de la latencia observada. Sustituye a los timeouts fijos de los servicios.
+     */
+    public long getTimeoutMs() {
+        return circuitBreaker.timeoutMs();
+    }
 
-        void clean() {
-            cache.entrySet().removeIf(entry -> entry.getValue().isExpired());
-        }
+    /**
+     * Como getTimeoutMs pero con las latencias de las descargas de categorías.
+     */
+    public long getTimeoutCatalogoMs() {
+        return circuitBreakerCatalogo.timeoutMs();
+    }
+
+    /**
+     * @return futuro que se completa con true cuando el cliente está listo, o con false si no se pudo arrancar
+     */
+    public CompletableFuture<Boolean> esperarDisponibilidad() {
+        return cliente.esperarDisponibilidad();
     }
 
-    private void iniciarLimpiadorCache() {
-        Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(
-                searchCache::clean, 10, 10, TimeUnit.MINUTES
-        );
+    public void cerrar() {
+        //el microservicio y el ejecutor son compartidos, los cierran MercadonaBridgeSupervisor y EjecutoresConfig al salir de la app
+        coalescedor.vaciar();
+        //el de las copias si es propio: las que sigan en curso ya no le sirven a nadie
+        ejecutorCoberturas.shutdownNow();
+        System.out.println("Circuito de Mercadona " + circuitBreaker.getEstado() + ", fallos " + Math.round(circuitBreaker.tasaFallos() * 100)
+                + "%, p50 " + circuitBreaker.percentilMs(50) + " ms, p99 " + circuitBreaker.percentilMs(99) + " ms");
+        System.out.println("Circuito del catálogo de Mercadona " + circuitBreakerCatalogo.getEstado() + ", fallos "
+                + Math.round(circuitBreakerCatalogo.tasaFallos() * 100) + "%, p99 " + circuitBreakerCatalogo.percentilMs(99) + " ms");
+        System.out.println("Búsquedas repetidas por latencia: " + cobertura.getCoberturasLanzadas()
+                + ", ganadas por la copia: " + cobertura.getCoberturasGanadoras());
+        System.out.println("Cache de búsquedas de Mercadona: " + searchCache.tamano() + " entradas, " + searchCache.estadisticas());
+        System.out.println("Cache de detalles de Mercadona: " + detalleCache.synchronous().estimatedSize() + " productos, " + detalleCache.synchronous().stats());
+        System.out.println("Cache de productos de Mercadona: " + MercadonaAdapter.tamanoCache() + " productos, " + MercadonaAdapter.obtenerEstadisticasCache());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,273 @@
+package smartsave.api;
+
+import smartsave.config.EjecutoresConfig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arranca y vigila el microservicio Python (mercadona_bridge.py), uno solo para toda la aplicación.
+ *
+ * El proceso se lanza en segundo plano y se considera listo cuando escribe por
+ * stdout la línea SENAL_LISTO seguida de su dirección (el puerto, o el socket
+ * Unix según el TransportePuente), que el script imprime justo después de
+ * abrir el socket. Si el proceso muere una vez listo se vuelve a arrancar con
+ * esperas crecientes; si muere antes de estar listo (falta Python o alguna
+ * dependencia) se da por fallido hasta que alguien llame otra vez a iniciar().
+ */
+public class MercadonaBridgeSupervisor {
+    static final String SENAL_LISTO = "SMARTSAVE_BRIDGE_READY";
+
+    private static final int PUERTO_POR_DEFECTO = 5000;
+    private static final long ESPERA_ARRANQUE_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long ESPERA_REINICIO_MS = 1000;
+    private static final int MAXIMO_REINICIOS = 5;
+    //si el proceso ha aguantado este tiempo, el contador de reinicios vuelve a cero
+    private static final long TIEMPO_ESTABLE_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final int LINEAS_DIAGNOSTICO = 20;
+    //peticiones que el microservicio atiende a la vez; ClienteMercadonaPuente dimensiona su pool con el mismo valor
+    //y el script usa el mismo valor por defecto (DEFAULT_WORKERS) cuando se lanza sin --workers
+    static final int TRABAJADORES = Math.max(1, Integer.getInteger("smartsave.mercadona.trabajadores", 10));
+
+    private enum Estado { PARADO, ARRANCANDO, LISTO, CERRADO }
+
+    private static MercadonaBridgeSupervisor instancia;
+    private static Path scriptPython;
+
+    private final Callable<List<String>> comando;
+    private final long esperaReinicioMs;
+    private final TransportePuente transporte;
+    private final Object lock = new Object();
+    private final Deque<String> ultimasLineas = new ArrayDeque<>();
+
+    private Estado estado = Estado.PARADO;
+    private Process proceso;
+    private CompletableFuture<Boolean> listo = new CompletableFuture<>();
+    private long listoDesdeMs;
+    private int reinicios;
+    private volatile boolean disponible;
+
+    public static synchronized MercadonaBridgeSupervisor getInstancia() {
+        if (instancia == null) {
+            TransportePuente transporte = TransportePuente.crearSegunConfiguracion();
+            instancia = new MercadonaBridgeSupervisor(() -> {
+                List<String> comando = new ArrayList<>(List.of("python", prepararScriptPython().toAbsolutePath().toString()));
+                comando.addAll(transporte.argumentos());
+                comando.addAll(List.of("--workers", String.valueOf(TRABAJADORES)));
+                return comando;
+            }, ESPERA_REINICIO_MS, transporte);
+            Runtime.getRuntime().addShutdownHook(new Thread(instancia::detener));
+        }
+        return instancia;
+    }
+
+    MercadonaBridgeSupervisor(Callable<List<String>> comando, long esperaReinicioMs) {
+        this(comando, esperaReinicioMs, new TransporteTcp(PUERTO_POR_DEFECTO));
+    }
+
+    MercadonaBridgeSupervisor(Callable<List<String>> comando, long esperaReinicioMs, TransportePuente transporte) {
+        this.comando = comando;
+        this.esperaReinicioMs = esperaReinicioMs;
+        this.transporte = transporte;
+    }
+
+    private static synchronized Path prepararScriptPython() throws IOException {
+        if (scriptPython != null && Files.exists(scriptPython)) {
+            return scriptPython;
+        }
+        try (InputStream scriptStream = MercadonaBridgeSupervisor.class.getResourceAsStream("/api/mercadona_bridge.py")) {
+            if (scriptStream == null) {
+                throw new IOException("No se pudo encontrar 'mercadona_bridge.py' en el JAR.");
+            }
+            Path tempScript = Files.createTempFile("mercadona_bridge_", ".py");
+            tempScript.toFile().deleteOnExit();
+
+            Files.copy(scriptStream, tempScript, StandardCopyOption.REPLACE_EXISTING);
+            scriptPython = tempScript;
+            return tempScript;
+        }
+    }
+
+    /**
+     * Arranca el microservicio si no está ya arrancado o arrancando. No bloquea.
+     * @return futuro que se completa con true cuando el microservicio está listo, o con false si no se pudo arrancar
+     */
+    public CompletableFuture<Boolean> iniciar() {
+        CompletableFuture<Boolean> senal;
+        synchronized (lock) {
+            if (estado == Estado.CERRADO) return CompletableFuture.completedFuture(false);
+            if (estado != Estado.PARADO) return listo;
+
+            estado = Estado.ARRANCANDO;
+            if (listo.isDone()) listo = new CompletableFuture<>();
+            senal = listo;
+        }
+        EjecutoresConfig.getEjecutorIO().execute(() -> arrancarProceso(senal));
+        return senal;
+    }
+
+    /**
+     * Futuro del arranque en curso (o del último, si ya terminó). Tras una caída
+     * se sustituye por el del reinicio.
+     */
+    public CompletableFuture<Boolean> esperarListo() {
+        synchronized (lock) {
+            return listo;
+        }
+    }
+
+    public boolean isDisponible() {
+        return disponible;
+    }
+
+    public String getUrlBase() {
+        return transporte.getUrlBase();
+    }
+
+    TransportePuente getTransporte() {
+        return transporte;
+    }
+
+    public void detener() {
+        Process actual;
+        CompletableFuture<Boolean> senal;
+        synchronized (lock) {
+            if (estado == Estado.CERRADO) return;
+            estado = Estado.CERRADO;
+            disponible = false;
+            actual = proceso;
+            proceso = null;
+            senal = listo;
+        }
+        senal.complete(false);
+        if (actual != null && actual.isAlive()) {
+            System.out.println("Apagando el microservicio Python...");
+            actual.destroy();
+        }
+        transporte.liberar();
+    }
+
+    private void arrancarProceso(CompletableFuture<Boolean> senal) {
+        Process nuevo;
+        try {
+            System.out.println("Arrancando el microservicio Python (Flask) en segundo plano...");
+            ProcessBuilder processBuilder = new ProcessBuilder(comando.call());
+            processBuilder.environment().put("PYTHONIOENCODING", "utf-8");
+            processBuilder.environment().put("LANG", "C.UTF-8");
+            processBuilder.redirectErrorStream(true);
+            nuevo = processBuilder.start();
+        } catch (Exception e) {
+            System.err.println("Error arrancando el servidor Flask de Python: " + e.getMessage());
+            synchronized (lock) {
+                if (estado == Estado.ARRANCANDO) estado = Estado.PARADO;
+            }
+            senal.complete(false);
+            return;
+        }
+
+        synchronized (lock) {
+            if (estado == Estado.CERRADO) {
+                nuevo.destroy();
+                return;
+            }
+            proceso = nuevo;
+            ultimasLineas.clear();
+        }
+
+        EjecutoresConfig.getPlanificador().schedule(() -> {
+            if (!senal.isDone()) {
+                System.err.println("El microservicio Python no respondió en " + ESPERA_ARRANQUE_MS / 1000 + " s, se detiene");
+                nuevo.destroy();
+            }
+        }, ESPERA_ARRANQUE_MS, TimeUnit.MILLISECONDS);
+
+        leerSalida(nuevo, senal);
+        try {
+            nuevo.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        alTerminar(nuevo, senal);
+    }
+
+    private void leerSalida(Process origen, CompletableFuture<Boolean> senal) {
+        try (BufferedReader lector = new BufferedReader(new InputStreamReader(origen.getInputStream(), StandardCharsets.UTF_8))) {
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                if (!senal.isDone() && linea.startsWith(SENAL_LISTO)) {
+                    marcarListo(linea, senal);
+                    continue;
+                }
+                synchronized (lock) {
+                    if (ultimasLineas.size() == LINEAS_DIAGNOSTICO) ultimasLineas.removeFirst();
+                    ultimasLineas.addLast(linea);
+                }
+            }
+        } catch (IOException e) {
+            //el stream se cierra al destruir el proceso
+        }
+    }
+
+    private void marcarListo(String linea, CompletableFuture<Boolean> senal) {
+        transporte.alEstarListo(linea.substring(SENAL_LISTO.length()).trim());
+        synchronized (lock) {
+            if (estado != Estado.ARRANCANDO) return;
+            estado = Estado.LISTO;
+            listoDesdeMs = System.currentTimeMillis();
+            disponible = true;
+        }
+        System.out.println("¡Conexión establecida con el microservicio Python en " + transporte.getUrlBase() + "!");
+        senal.complete(true);
+    }
+
+    private void alTerminar(Process terminado, CompletableFuture<Boolean> senal) {
+        CompletableFuture<Boolean> siguiente;
+        long espera;
+        synchronized (lock) {
+            if (terminado != proceso) return;
+            proceso = null;
+            disponible = false;
+            if (estado == Estado.CERRADO) return;
+
+            if (estado != Estado.LISTO) {
+                estado = Estado.PARADO;
+                System.err.println("El microservicio Python terminó antes de estar listo (código " + terminado.exitValue() + "):");
+                ultimasLineas.forEach(linea -> System.err.println("  " + linea));
+                senal.complete(false);
+                return;
+            }
+
+            if (System.currentTimeMillis() - listoDesdeMs > TIEMPO_ESTABLE_MS) reinicios = 0;
+            if (reinicios >= MAXIMO_REINICIOS) {
+                estado = Estado.PARADO;
+                listo = CompletableFuture.completedFuture(false);
+                System.err.println("El microservicio Python se ha caído " + reinicios + " veces seguidas, no se reinicia más");
+                return;
+            }
+
+            espera = esperaReinicioMs << reinicios;
+            reinicios++;
+            estado = Estado.ARRANCANDO;
+            listo = new CompletableFuture<>();
+            siguiente = listo;
+        }
+
+        System.err.println("El microservicio Python se ha caído (código " + terminado.exitValue() + "), reiniciando en " + espera + " ms");
+        EjecutoresConfig.getPlanificador().schedule(
+                () -> EjecutoresConfig.getEjecutorIO().execute(() -> arrancarProceso(siguiente)),
+                espera, TimeUnit.MILLISECONDS);
+    }
+}
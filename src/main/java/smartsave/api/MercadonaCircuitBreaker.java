@@ -0,0 +1,174 @@
+package smartsave.api;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Cortocircuito para las llamadas de MercadonaApiServicio al cliente de Mercadona.
+ *
+ * Guarda el resultado y la latencia de las últimas TAMANO_VENTANA llamadas. Si
+ * la proporción de fallos (incluidas las llamadas más lentas que el timeout
+ * vigente) pasa de UMBRAL_FALLOS, el circuito se abre y las llamadas se rechazan
+ * al instante, de modo que los servicios tiran del catálogo en H2. Pasado
+ * ESPERA_ABIERTO_MS se deja pasar una única llamada de prueba (semiabierto):
+ * si sale bien el circuito se cierra y si no, vuelve a abrirse.
+ *
+ * El timeout que deben usar los llamantes se calcula a partir del p99 de la
+ * latencia observada en lugar de ser un valor fijo.
+ */
+class MercadonaCircuitBreaker {
+    private static final int TAMANO_VENTANA = 50;
+    private static final int MINIMO_LLAMADAS = 10;
+    private static final double UMBRAL_FALLOS = 0.5;
+    private static final long ESPERA_ABIERTO_MS = TimeUnit.SECONDS.toMillis(15);
+
+    private static final long TIMEOUT_INICIAL_MS = TimeUnit.SECONDS.toMillis(10);
+    private static final long TIMEOUT_MINIMO_MS = 1500;
+    private static final long TIMEOUT_MAXIMO_MS = TimeUnit.SECONDS.toMillis(15);
+    private static final double MARGEN_TIMEOUT = 1.5;
+
+    enum Estado { CERRADO, ABIERTO, SEMIABIERTO }
+
+    private final String nombre;
+    private final LongSupplier reloj;
+
+    private final boolean[] fallos = new boolean[TAMANO_VENTANA];
+    private final long[] latenciasMs = new long[TAMANO_VENTANA];
+    private int posicion;
+    private int llamadas;
+
+    private Estado estado = Estado.CERRADO;
+    private long abiertoHastaMs;
+    private boolean pruebaEnCurso;
+
+    MercadonaCircuitBreaker() {
+        this("Mercadona");
+    }
+
+    /**
+     * @param nombre lo que protege el circuito, para los mensajes
+     */
+    MercadonaCircuitBreaker(String nombre) {
+        this(nombre, System::currentTimeMillis);
+    }
+
+    MercadonaCircuitBreaker(LongSupplier reloj) {
+        this("Mercadona", reloj);
+    }
+
+    MercadonaCircuitBreaker(String nombre, LongSupplier reloj) {
+        this.nombre = nombre;
+        this.reloj = reloj;
+    }
+
+    /**
+     * Reserva el permiso para hacer una llamada. Con el circuito semiabierto solo
+     * lo obtiene un llamante, que debe informar después del resultado.
+     */
+    synchronized boolean permitirLlamada() {
+        switch (estado) {
+            case CERRADO:
+                return true;
+            case ABIERTO:
+                if (reloj.getAsLong() < abiertoHastaMs) return false;
+                estado = Estado.SEMIABIERTO;
+                pruebaEnCurso = true;
+                return true;
+            default:
+                if (pruebaEnCurso) return false;
+                pruebaEnCurso = true;
+                return true;
+        }
+    }
+
+    /**
+     * Igual que permitirLlamada pero sin reservar nada, para decidir de antemano
+     * si merece la pena esperar a la API.
+     */
+    synchronized boolean admiteLlamadas() {
+        return switch (estado) {
+            case CERRADO -> true;
+            case ABIERTO -> reloj.getAsLong() >= abiertoHastaMs;
+            case SEMIABIERTO -> !pruebaEnCurso;
+        };
+    }
+
+    synchronized void registrarExito(long latenciaMs) {
+        //una respuesta que llega despues de que el llamante haya dejado de esperar cuenta como fallo
+        registrar(latenciaMs > timeoutMs(), latenciaMs);
+    }
+
+    synchronized void registrarFallo(long latenciaMs) {
+        registrar(true, latenciaMs);
+    }
+
+    private void registrar(boolean fallo, long latenciaMs) {
+        if (estado == Estado.SEMIABIERTO) {
+            pruebaEnCurso = false;
+            if (fallo) {
+                abrir();
+                return;
+            }
+            estado = Estado.CERRADO;
+            llamadas = 0;
+            posicion = 0;
+        }
+
+        fallos[posicion] = fallo;
+        latenciasMs[posicion] = latenciaMs;
+        posicion = (posicion + 1) % TAMANO_VENTANA;
+        llamadas = Math.min(llamadas + 1, TAMANO_VENTANA);
+
+        if (estado == Estado.CERRADO && llamadas >= MINIMO_LLAMADAS && tasaFallos() >= UMBRAL_FALLOS) {
+            abrir();
+        }
+    }
+
+    private void abrir() {
+        estado = Estado.ABIERTO;
+        abiertoHastaMs = reloj.getAsLong() + ESPERA_ABIERTO_MS;
+        System.err.println("Circuito de " + nombre + " abierto durante " + ESPERA_ABIERTO_MS / 1000 + " s");
+    }
+
+    synchronized Estado getEstado() {
+        return estado;
+    }
+
+    synchronized double tasaFallos() {
+        if (llamadas == 0) return 0;
+        int numeroFallos = 0;
+        for (int i = 0; i < llamadas; i++) {
+            if (fallos[i]) numeroFallos++;
+        }
+        return (double) numeroFallos / llamadas;
+    }
+
+    /**
+     * Percentil de la latencia de las llamadas que han ido bien.
+     * @param percentil entre 0 y 100
+     * @return latencia en ms, o -1 si todavía no hay suficientes llamadas
+     */
+    synchronized long percentilMs(double percentil) {
+        long[] exitosas = new long[llamadas];
+        int n = 0;
+        for (int i = 0; i < llamadas; i++) {
+            if (!fallos[i]) exitosas[n++] = latenciasMs[i];
+        }
+        if (n < MINIMO_LLAMADAS) return -1;
+
+        Arrays.sort(exitosas, 0, n);
+        int indice = (int) Math.ceil(percentil / 100.0 * n) - 1;
+        return exitosas[Math.max(0, Math.min(n - 1, indice))];
+    }
+
+    /**
+     * Tiempo máximo que conviene esperar una respuesta: el p99 observado con margen,
+     * acotado entre TIMEOUT_MINIMO_MS y TIMEOUT_MAXIMO_MS.
+     */
+    synchronized long timeoutMs() {
+        long p99 = percentilMs(99);
+        if (p99 < 0) return TIMEOUT_INICIAL_MS;
+        return Math.max(TIMEOUT_MINIMO_MS, Math.min(TIMEOUT_MAXIMO_MS, (long) (p99 * MARGEN_TIMEOUT)));
+    }
+}
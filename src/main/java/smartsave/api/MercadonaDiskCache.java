@@ -0,0 +1,239 @@
+package smartsave.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Cache en disco de las respuestas de Mercadona para que sobrevivan a un reinicio.
+ *
+ * El archivo es de solo añadir: cada escritura agrega un registro al final y,
+ * al leer, el último registro de una clave es el que vale. La lectura inicial
+ * carga el archivo entero en memoria de una vez; no se mapea porque en Windows
+ * un archivo mapeado no se puede reemplazar hasta que el GC libera el mapeo, y
+ * eso impediría compactarlo. Cuando los registros obsoletos ocupan más que los
+ * vigentes, el archivo se reescribe solo con estos últimos.
+ *
+ * El archivo está en el directorio smartsave.cache.directorio o, si no se
+ * indica, en ~/.smartsave/cache, para no depender del directorio de trabajo.
+ *
+ * Formato de cada registro:
+ * [int longitud][long escritoEnMs][long ttlMs][int longClave][clave][int longValor][valor][int crc32]
+ */
+public class MercadonaDiskCache {
+    private static final Path RUTA_POR_DEFECTO = Paths.get(System.getProperty("smartsave.cache.directorio",
+            Paths.get(System.getProperty("user.home"), ".smartsave", "cache").toString()), "mercadona_cache.dat");
+    private static final int CABECERA_REGISTRO = Long.BYTES * 2 + Integer.BYTES * 2;
+    private static final long UMBRAL_COMPACTACION_BYTES = 1024 * 1024;
+
+    private static MercadonaDiskCache instancia;
+
+    private final Path archivo;
+    private final Object lock = new Object();
+    private FileChannel canal;
+
+    public record EntradaDisco(String clave, byte[] valor, long escritoEnMs, long ttlMs) {
+        boolean expirada(long ahora) {
+            return ahora - escritoEnMs > ttlMs;
+        }
+
+        long restanteMs(long ahora) {
+            return Math.max(0, escritoEnMs + ttlMs - ahora);
+        }
+    }
+
+    public static synchronized MercadonaDiskCache getInstancia() {
+        if (instancia == null) {
+            instancia = new MercadonaDiskCache(RUTA_POR_DEFECTO);
+        }
+        return instancia;
+    }
+
+    MercadonaDiskCache(Path archivo) {
+        this.archivo = archivo;
+    }
+
+    /**
+     * Lee el archivo completo y devuelve la última versión no caducada de cada clave.
+     * Un registro incompleto o corrupto al final (por un cierre brusco) se descarta
+     * y se compacta el archivo para que las escrituras siguientes sigan siendo legibles.
+     * También se compacta si hay demasiados registros obsoletos.
+     */
+    public Map<String, EntradaDisco> cargar() {
+        synchronized (lock) {
+            Map<String, EntradaDisco> entradas = new LinkedHashMap<>();
+            if (!Files.exists(archivo)) {
+                return entradas;
+            }
+
+            long ahora = System.currentTimeMillis();
+            long tamanoArchivo;
+            boolean colaCorrupta;
+            try (FileChannel lectura = FileChannel.open(archivo, StandardOpenOption.READ)) {
+                tamanoArchivo = lectura.size();
+                ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(tamanoArchivo));
+                while (buffer.hasRemaining()) {
+                    if (lectura.read(buffer) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                while (buffer.remaining() >= Integer.BYTES) {
+                    EntradaDisco entrada = leerRegistro(buffer);
+                    if (entrada == null) {
+                        break;
+                    }
+                    entradas.remove(entrada.clave());
+                    entradas.put(entrada.clave(), entrada);
+                }
+                colaCorrupta = buffer.hasRemaining();
+            } catch (IOException | ArithmeticException e) {
+                System.err.println("No se pudo leer la cache en disco de Mercadona: " + e.getMessage());
+                return entradas;
+            }
+
+            entradas.values().removeIf(entrada -> entrada.expirada(ahora));
+
+            long bytesVigentes = entradas.values().stream().mapToLong(MercadonaDiskCache::tamanoRegistro).sum();
+            if (colaCorrupta || (tamanoArchivo > UMBRAL_COMPACTACION_BYTES && tamanoArchivo > 2 * bytesVigentes)) {
+                compactar(entradas);
+            }
+            return entradas;
+        }
+    }
+
+    public void guardar(String clave, byte[] valor, long ttlMs) {
+        EntradaDisco entrada = new EntradaDisco(clave, valor, System.currentTimeMillis(), ttlMs);
+        ByteBuffer registro = serializar(entrada);
+        synchronized (lock) {
+            try {
+                FileChannel destino = abrirParaEscritura();
+                while (registro.hasRemaining()) {
+                    destino.write(registro);
+                }
+            } catch (IOException e) {
+                System.err.println("No se pudo escribir en la cache en disco de Mercadona: " + e.getMessage());
+            }
+        }
+    }
+
+    public void cerrar() {
+        synchronized (lock) {
+            cerrarCanal();
+        }
+    }
+
+    private FileChannel abrirParaEscritura() throws IOException {
+        if (canal == null || !canal.isOpen()) {
+            Path directorio = archivo.toAbsolutePath().getParent();
+            if (directorio != null) {
+                Files.createDirectories(directorio);
+            }
+            canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return canal;
+    }
+
+    private void cerrarCanal() {
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException e) {
+                System.err.println("Error cerrando la cache en disco de Mercadona: " + e.getMessage());
+            }
+            canal = null;
+        }
+    }
+
+    private void compactar(Map<String, EntradaDisco> entradas) {
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (FileChannel escritura = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (EntradaDisco entrada : entradas.values()) {
+                ByteBuffer registro = serializar(entrada);
+                while (registro.hasRemaining()) {
+                    escritura.write(registro);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo compactar la cache en disco de Mercadona: " + e.getMessage());
+            return;
+        }
+
+        cerrarCanal();
+        try {
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("No se pudo reemplazar la cache en disco de Mercadona: " + e.getMessage());
+        }
+    }
+
+    private static EntradaDisco leerRegistro(ByteBuffer buffer) {
+        int inicioRegistro = buffer.position();
+        int longitud = buffer.getInt();
+        if (longitud < CABECERA_REGISTRO || longitud > buffer.remaining() - Integer.BYTES) {
+            buffer.position(inicioRegistro);
+            return null;
+        }
+
+        int inicio = buffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(inicio, longitud));
+
+        long escritoEnMs = buffer.getLong();
+        long ttlMs = buffer.getLong();
+        int longitudClave = buffer.getInt();
+        if (longitudClave < 0 || longitudClave > longitud - CABECERA_REGISTRO) {
+            buffer.position(inicioRegistro);
+            return null;
+        }
+        byte[] clave = new byte[longitudClave];
+        buffer.get(clave);
+        int longitudValor = buffer.getInt();
+        if (longitudValor != longitud - CABECERA_REGISTRO - longitudClave) {
+            buffer.position(inicioRegistro);
+            return null;
+        }
+        byte[] valor = new byte[longitudValor];
+        buffer.get(valor);
+
+        if ((int) crc.getValue() != buffer.getInt()) {
+            buffer.position(inicioRegistro);
+            return null;
+        }
+        return new EntradaDisco(new String(clave, StandardCharsets.UTF_8), valor, escritoEnMs, ttlMs);
+    }
+
+    private static ByteBuffer serializar(EntradaDisco entrada) {
+        byte[] clave = entrada.clave().getBytes(StandardCharsets.UTF_8);
+        int longitud = CABECERA_REGISTRO + clave.length + entrada.valor().length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + longitud + Integer.BYTES);
+        buffer.putInt(longitud);
+        buffer.putLong(entrada.escritoEnMs());
+        buffer.putLong(entrada.ttlMs());
+        buffer.putInt(clave.length);
+        buffer.put(clave);
+        buffer.putInt(entrada.valor().length);
+        buffer.put(entrada.valor());
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), Integer.BYTES, longitud);
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+
+    private static long tamanoRegistro(EntradaDisco entrada) {
+        return Integer.BYTES * 2L + CABECERA_REGISTRO
+                + entrada.clave().getBytes(StandardCharsets.UTF_8).length + entrada.valor().length;
+    }
+}
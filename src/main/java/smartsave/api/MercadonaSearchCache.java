@@ -0,0 +1,167 @@
+package smartsave.api;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import smartsave.modelo.Producto;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Cache de resultados de búsqueda de Mercadona.
+ *
+ * Está acotada por el tamaño estimado en bytes de las listas de productos y
+ * usa la política W-TinyLFU de Caffeine, que solo admite una entrada nueva si
+ * se ha pedido más veces que la que tendría que desalojar. Las lecturas no
+ * bloquean, las cargas concurrentes de una misma clave se comparten y las
+ * entradas muy consultadas se refrescan en segundo plano antes de caducar.
+ * Esas recargas usan su propio cargador: MercadonaApiServicio las manda término a
+ * término, sin juntarlas en lotes, para que ClienteMercadonaPuente pueda revalidar
+ * cada búsqueda con su ETag; si no ha cambiado el microservicio responde 304 y no
+ * se vuelve a parsear.
+ */
+class MercadonaSearchCache {
+    static final String PREFIJO_BUSQUEDA = "search:";
+    static final String PREFIJO_NOVEDADES = "new_products:";
+
+    private static final long EXPIRACION_MS = TimeUnit.MINUTES.toMillis(15);
+    private static final long REFRESCO_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final long PESO_MAXIMO_BYTES = 8L * 1024 * 1024;
+
+    //estimacion grosso modo de un Producto con sus BigDecimal y la info nutricional
+    private static final int BYTES_BASE_PRODUCTO = 480;
+    private static final int BYTES_BASE_ENTRADA = 96;
+
+    private final AsyncLoadingCache<String, List<Producto>> cache;
+
+    MercadonaSearchCache(Function<String, CompletableFuture<List<Producto>>> cargador, Executor executor) {
+        this(cargador, cargador, executor);
+    }
+
+    /**
+     * @param recargador carga usada para el refresco en segundo plano de una entrada que ya existe
+     */
+    MercadonaSearchCache(Function<String, CompletableFuture<List<Producto>>> cargador,
+                         Function<String, CompletableFuture<List<Producto>>> recargador, Executor executor) {
+        this.cache = Caffeine.newBuilder()
+                .executor(executor)
+                .scheduler(Scheduler.systemScheduler())
+                .maximumWeight(PESO_MAXIMO_BYTES)
+                .weigher(MercadonaSearchCache::estimarBytes)
+                .expireAfter(new ExpiracionTrasEscritura())
+                .refreshAfterWrite(REFRESCO_MS, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .buildAsync(new AsyncCacheLoader<String, List<Producto>>() {
+                    @Override
+                    public CompletableFuture<List<Producto>> asyncLoad(String clave, Executor ejecutor) {
+                        return cargador.apply(clave);
+                    }
+
+                    @Override
+                    public CompletableFuture<List<Producto>> asyncReload(String clave, List<Producto> anterior, Executor ejecutor) {
+                        return recargador.apply(clave);
+                    }
+                });
+    }
+
+    /**
+     * Caduca cada entrada EXPIRACION_MS después de escribirla o refrescarla, salvo
+     * las insertadas con putSiAusente, que traen su propia duración.
+     */
+    private static class ExpiracionTrasEscritura implements Expiry<String, List<Producto>> {
+        private static final long EXPIRACION_NS = TimeUnit.MILLISECONDS.toNanos(EXPIRACION_MS);
+
+        @Override
+        public long expireAfterCreate(String clave, List<Producto> productos, long ahora) {
+            return EXPIRACION_NS;
+        }
+
+        @Override
+        public long expireAfterUpdate(String clave, List<Producto> productos, long ahora, long duracionActual) {
+            return EXPIRACION_NS;
+        }
+
+        @Override
+        public long expireAfterRead(String clave, List<Producto> productos, long ahora, long duracionActual) {
+            return duracionActual;
+        }
+    }
+
+    static String claveBusqueda(String termino, String codigoPostal) {
+        return PREFIJO_BUSQUEDA + termino + ":" + codigoPostal;
+    }
+
+    static String claveNovedades(String codigoPostal) {
+        return PREFIJO_NOVEDADES + codigoPostal;
+    }
+
+    static String terminoDeClave(String clave) {
+        return clave.substring(PREFIJO_BUSQUEDA.length(), clave.lastIndexOf(':'));
+    }
+
+    /**
+     * Devuelve la entrada de la cache o la carga si no existe. Cada llamante
+     * recibe su propia copia de la lista.
+     */
+    CompletableFuture<List<Producto>> get(String clave) {
+        return cache.get(clave).thenApply(ArrayList::new);
+    }
+
+    /**
+     * Consulta la cache sin lanzar ninguna carga.
+     * @return copia de la lista cacheada, o lista vacía si no hay entrada
+     */
+    List<Producto> obtenerSiPresente(String clave) {
+        List<Producto> productos = cache.synchronous().getIfPresent(clave);
+        return productos != null ? new ArrayList<>(productos) : new ArrayList<>();
+    }
+
+    void put(String clave, List<Producto> productos) {
+        cache.put(clave, CompletableFuture.completedFuture(new ArrayList<>(productos)));
+    }
+
+    /**
+     * Inserta una entrada con una caducidad propia, como las recuperadas de disco,
+     * que no deben vivir más que lo que les quedaba. Nunca pisa una entrada existente.
+     */
+    void putSiAusente(String clave, List<Producto> productos, long expiraEnMs) {
+        long duracion = Math.min(expiraEnMs, EXPIRACION_MS);
+        cache.synchronous().policy().expireVariably().ifPresent(politica ->
+                politica.putIfAbsent(clave, new ArrayList<>(productos), Duration.ofMillis(duracion)));
+    }
+
+    void invalidar() {
+        cache.synchronous().invalidateAll();
+    }
+
+    long tamano() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    CacheStats estadisticas() {
+        return cache.synchronous().stats();
+    }
+
+    static int estimarBytes(String clave, List<Producto> productos) {
+        long bytes = BYTES_BASE_ENTRADA + 2L * clave.length();
+        for (Producto producto : productos) {
+            bytes += BYTES_BASE_PRODUCTO
+                    + 2L * (longitud(producto.getNombre()) + longitud(producto.getMarca())
+                    + longitud(producto.getCategoria()) + longitud(producto.getSupermercado()));
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static int longitud(String texto) {
+        return texto != null ? texto.length() : 0;
+    }
+}
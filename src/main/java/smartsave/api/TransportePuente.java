@@ -0,0 +1,55 @@
+package smartsave.api;
+
+import okhttp3.OkHttpClient;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Canal por el que el cliente Java habla con mercadona_bridge.py.
+ *
+ * Hay dos: TransporteUnix, un socket Unix en un directorio temporal (sin puertos
+ * que puedan chocar entre dos instancias y sin la pila TCP de loopback), y
+ * TransporteTcp, un puerto libre de 127.0.0.1. Se elige con
+ * -Dsmartsave.mercadona.transporte=unix|tcp; por defecto unix, salvo en Windows,
+ * donde Python no tiene AF_UNIX.
+ */
+interface TransportePuente {
+    String PROPIEDAD_TRANSPORTE = "smartsave.mercadona.transporte";
+
+    static TransportePuente crearSegunConfiguracion() {
+        boolean windows = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+        String transporte = System.getProperty(PROPIEDAD_TRANSPORTE, windows ? "tcp" : "unix");
+        if ("unix".equalsIgnoreCase(transporte)) {
+            try {
+                return TransporteUnix.enDirectorioTemporal();
+            } catch (IOException e) {
+                System.err.println("No se pudo preparar el socket Unix del microservicio, se usa TCP: " + e.getMessage());
+            }
+        }
+        //con el puerto 0 el script escoge uno libre y lo anuncia en la señal de listo
+        return new TransporteTcp(0);
+    }
+
+    /**
+     * @return argumentos de mercadona_bridge.py para que escuche en este transporte
+     */
+    List<String> argumentos();
+
+    /**
+     * Recibe la dirección que el script anuncia junto a la señal de listo.
+     */
+    void alEstarListo(String direccion);
+
+    String getUrlBase();
+
+    /**
+     * Prepara el cliente HTTP para conectar por este transporte.
+     */
+    OkHttpClient.Builder configurar(OkHttpClient.Builder builder);
+
+    /**
+     * Libera lo que haya creado el transporte (el fichero del socket) al apagar el microservicio.
+     */
+    void liberar();
+}
@@ -0,0 +1,46 @@
+package smartsave.api;
+
+import okhttp3.OkHttpClient;
+
+import java.util.List;
+
+/**
+ * El microservicio escucha en 127.0.0.1 en el puerto pedido, o en uno libre si se pide el 0.
+ */
+class TransporteTcp implements TransportePuente {
+    private final int puertoSolicitado;
+    private volatile int puerto;
+
+    TransporteTcp(int puertoSolicitado) {
+        this.puertoSolicitado = puertoSolicitado;
+        this.puerto = puertoSolicitado;
+    }
+
+    @Override
+    public List<String> argumentos() {
+        return List.of("--port", String.valueOf(puertoSolicitado));
+    }
+
+    @Override
+    public void alEstarListo(String direccion) {
+        try {
+            puerto = Integer.parseInt(direccion.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("El microservicio Python anunció un puerto no válido: " + direccion);
+        }
+    }
+
+    @Override
+    public String getUrlBase() {
+        return "http://127.0.0.1:" + puerto;
+    }
+
+    @Override
+    public OkHttpClient.Builder configurar(OkHttpClient.Builder builder) {
+        return builder;
+    }
+
+    @Override
+    public void liberar() {
+    }
+}
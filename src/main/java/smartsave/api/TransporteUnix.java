@@ -0,0 +1,301 @@
+package smartsave.api;
+
+import okhttp3.OkHttpClient;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * El microservicio escucha en un socket Unix. OkHttp solo sabe de java.net.Socket,
+ * así que la fábrica de sockets devuelve uno que, conecte adonde conecte, abre un
+ * SocketChannel al fichero del socket; la URL base solo sirve para la cabecera Host.
+ */
+class TransporteUnix implements TransportePuente {
+    private final Path socket;
+
+    TransporteUnix(Path socket) {
+        this.socket = socket;
+    }
+
+    static TransporteUnix enDirectorioTemporal() throws IOException {
+        //un directorio propio por proceso: dos instancias de la app nunca comparten socket
+        Path directorio = Files.createTempDirectory("smartsave-puente");
+        directorio.toFile().deleteOnExit();
+        return new TransporteUnix(directorio.resolve("puente.sock"));
+    }
+
+    @Override
+    public List<String> argumentos() {
+        return List.of("--unix-socket", socket.toString());
+    }
+
+    @Override
+    public void alEstarListo(String direccion) {
+        //la dirección ya la fija Java, el script solo la repite
+    }
+
+    @Override
+    public String getUrlBase() {
+        return "http://localhost";
+    }
+
+    @Override
+    public OkHttpClient.Builder configurar(OkHttpClient.Builder builder) {
+        return builder
+                .socketFactory(new FabricaSockets())
+                .dns(host -> List.of(InetAddress.getLoopbackAddress()));
+    }
+
+    @Override
+    public void liberar() {
+        try {
+            Files.deleteIfExists(socket);
+            Files.deleteIfExists(socket.getParent());
+        } catch (IOException e) {
+            System.err.println("No se pudo borrar el socket del microservicio: " + e.getMessage());
+        }
+    }
+
+    private class FabricaSockets extends SocketFactory {
+        @Override
+        public Socket createSocket() {
+            return new SocketUnix();
+        }
+
+        @Override
+        public Socket createSocket(String host, int puerto) throws IOException {
+            return conectado();
+        }
+
+        @Override
+        public Socket createSocket(String host, int puerto, InetAddress local, int puertoLocal) throws IOException {
+            return conectado();
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int puerto) throws IOException {
+            return conectado();
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int puerto, InetAddress local, int puertoLocal) throws IOException {
+            return conectado();
+        }
+
+        private Socket conectado() throws IOException {
+            SocketUnix nuevo = new SocketUnix();
+            nuevo.connect(null);
+            return nuevo;
+        }
+    }
+
+    /**
+     * Socket sobre un SocketChannel Unix no bloqueante con su propio Selector, para
+     * poder respetar el soTimeout que OkHttp usa al comprobar si una conexión del
+     * pool sigue viva. Si se interrumpe el hilo que lee (cobertura de peticiones
+     * cancelada) la lectura termina con InterruptedIOException.
+     */
+    private class SocketUnix extends Socket {
+        private SocketChannel canal;
+        private Selector selector;
+        private volatile int timeoutLecturaMs;
+        private volatile boolean cerrado;
+        private volatile boolean entradaCerrada;
+        private volatile boolean salidaCerrada;
+        private final InputStream entrada = new Entrada();
+        private final OutputStream salida = new Salida();
+
+        @Override
+        public void connect(SocketAddress direccion) throws IOException {
+            connect(direccion, 0);
+        }
+
+        @Override
+        public synchronized void connect(SocketAddress direccion, int timeout) throws IOException {
+            if (cerrado) throw new SocketException("Socket cerrado");
+            canal = SocketChannel.open(StandardProtocolFamily.UNIX);
+            canal.connect(UnixDomainSocketAddress.of(socket));
+            canal.configureBlocking(false);
+            selector = Selector.open();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            comprobarConectado();
+            return entrada;
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            comprobarConectado();
+            return salida;
+        }
+
+        private void comprobarConectado() throws SocketException {
+            if (cerrado) throw new SocketException("Socket cerrado");
+            if (canal == null) throw new SocketException("Socket no conectado");
+        }
+
+        @Override
+        public void setSoTimeout(int timeout) {
+            timeoutLecturaMs = timeout;
+        }
+
+        @Override
+        public int getSoTimeout() {
+            return timeoutLecturaMs;
+        }
+
+        @Override
+        public void setTcpNoDelay(boolean activo) {
+            //no aplica a un socket Unix
+        }
+
+        @Override
+        public boolean isConnected() {
+            return canal != null && canal.isConnected();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return cerrado;
+        }
+
+        @Override
+        public boolean isInputShutdown() {
+            return entradaCerrada;
+        }
+
+        @Override
+        public boolean isOutputShutdown() {
+            return salidaCerrada;
+        }
+
+        @Override
+        public void shutdownInput() throws IOException {
+            comprobarConectado();
+            entradaCerrada = true;
+            canal.shutdownInput();
+        }
+
+        @Override
+        public void shutdownOutput() throws IOException {
+            comprobarConectado();
+            salidaCerrada = true;
+            canal.shutdownOutput();
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (cerrado) return;
+            cerrado = true;
+            if (selector != null) selector.close();
+            if (canal != null) canal.close();
+        }
+
+        @Override
+        public String toString() {
+            return "SocketUnix[" + socket + "]";
+        }
+
+        /**
+         * Espera a que el canal esté listo para la operación indicada.
+         * @return false si se ha agotado el tiempo
+         */
+        private boolean esperar(int operacion, long timeoutMs) throws IOException {
+            synchronized (selector) {
+                try {
+                    SelectionKey clave = canal.register(selector, operacion);
+                    try {
+                        int listos = selector.select(timeoutMs);
+                        if (Thread.interrupted()) {
+                            throw new InterruptedIOException("Lectura del microservicio interrumpida");
+                        }
+                        return listos > 0 || timeoutMs == 0;
+                    } finally {
+                        if (clave.isValid()) clave.interestOps(0);
+                        selector.selectedKeys().clear();
+                    }
+                } catch (ClosedSelectorException | CancelledKeyException e) {
+                    //OkHttp cierra el socket desde otro hilo al vencer sus timeouts
+                    throw new SocketException("Socket cerrado");
+                }
+            }
+        }
+
+        private class Entrada extends InputStream {
+            @Override
+            public int read() throws IOException {
+                byte[] uno = new byte[1];
+                int leidos = read(uno, 0, 1);
+                return leidos == -1 ? -1 : uno[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] destino, int desde, int longitud) throws IOException {
+                if (longitud == 0) return 0;
+                ByteBuffer buffer = ByteBuffer.wrap(destino, desde, longitud);
+                while (true) {
+                    comprobarConectado();
+                    int leidos = canal.read(buffer);
+                    if (leidos != 0) return leidos;
+                    if (!esperar(SelectionKey.OP_READ, timeoutLecturaMs)) {
+                        throw new SocketTimeoutException("Sin respuesta del microservicio en " + timeoutLecturaMs + " ms");
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                SocketUnix.this.close();
+            }
+        }
+
+        private class Salida extends OutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] origen, int desde, int longitud) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(origen, desde, longitud);
+                while (buffer.hasRemaining()) {
+                    comprobarConectado();
+                    if (canal.write(buffer) == 0) {
+                        esperar(SelectionKey.OP_WRITE, 0);
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                SocketUnix.this.close();
+            }
+        }
+    }
+}
@@ -9,7 +9,13 @@ import javafx.scene.control.Alert;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import smartsave.api.ClienteMercadona;
+import smartsave.api.MercadonaBridgeSupervisor;
+import smartsave.api.MercadonaDiskCache;
+import smartsave.config.EjecutoresConfig;
 import smartsave.config.HibernateConfig; 
+import smartsave.servicio.CatalogoCrawler;
+import smartsave.servicio.ContextoAplicacion;
 import smartsave.servicio.ModalidadAhorroServicio; 
 
 import java.io.BufferedReader;
@@ -26,15 +32,17 @@ public class SmartSaveApp extends Application {
 
     @Override
     public void start(Stage escenarioPrincipal) throws Exception {
-        boolean pythonDepsOk = checkAndInstallPythonDependencies();
-        if (!pythonDepsOk) {
-            Alert alert = new Alert(Alert.AlertType.WARNING);
-            alert.setTitle("Advertencia de Dependencias");
-            alert.setHeaderText("Problema con las dependencias de Python");
-            alert.setContentText("No se pudieron instalar/verificar las dependencias de Python (mercapy, requests).\n" +
-                    "La funcionalidad de búsqueda de productos de Mercadona podría no estar disponible.\n" +
-                    "Por favor, asegúrate de tener Python y pip instalados y configurados en el PATH, y una conexión a internet.");
-            alert.showAndWait();
+        //pip y el microservicio de Mercadona se preparan en segundo plano para no retrasar la ventana;
+        //con el cliente directo no hace falta Python
+        if (!ClienteMercadona.usaClienteDirecto()) {
+            EjecutoresConfig.ejecutarAsync(SmartSaveApp::checkAndInstallPythonDependencies)
+                    .thenAccept(pythonDepsOk -> {
+                        if (pythonDepsOk) {
+                            MercadonaBridgeSupervisor.getInstancia().iniciar();
+                        } else {
+                            Platform.runLater(SmartSaveApp::mostrarAvisoDependencias);
+                        }
+                    });
         }
         try {
 
@@ -78,6 +86,11 @@ public class SmartSaveApp extends Application {
     public void stop() throws Exception {
         System.out.println("Cerrando SmartSave, limpiando recursos...");
 
+        CatalogoCrawler.detener();
+        ContextoAplicacion.getInstancia().cerrar();
+        MercadonaBridgeSupervisor.getInstancia().detener();
+        EjecutoresConfig.shutdown();
+        MercadonaDiskCache.getInstancia().cerrar();
         HibernateConfig.shutdown();
         System.out.println("Recursos de base de datos liberados.");
 
@@ -85,6 +98,16 @@ public class SmartSaveApp extends Application {
         System.exit(0);
     }
 
+    private static void mostrarAvisoDependencias() {
+        Alert alert = new Alert(Alert.AlertType.WARNING);
+        alert.setTitle("Advertencia de Dependencias");
+        alert.setHeaderText("Problema con las dependencias de Python");
+        alert.setContentText("No se pudieron instalar/verificar las dependencias de Python (mercapy, requests).\n" +
+                "La funcionalidad de búsqueda de productos de Mercadona podría no estar disponible.\n" +
+                "Por favor, asegúrate de tener Python y pip instalados y configurados en el PATH, y una conexión a internet.");
+        alert.show();
+    }
+
     private void configurarVentanaArrastrable(Scene escena, Stage escenario) {
         escena.setOnMousePressed(evento -> {
             offsetX = evento.getSceneX();
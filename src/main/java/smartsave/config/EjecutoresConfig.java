@@ -0,0 +1,113 @@
+package smartsave.config;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Ejecutores compartidos para las operaciones bloqueantes de SmartSave
+ * (peticiones al microservicio de Mercadona y consultas de Hibernate).
+ *
+ * Por defecto cada tarea corre en un hilo virtual. Arrancando con
+ * -Dsmartsave.hilosVirtuales=false se vuelve a un pool de hilos de plataforma.
+ */
+public class EjecutoresConfig {
+    private static final String PROPIEDAD_HILOS_VIRTUALES = "smartsave.hilosVirtuales";
+    private static final int HILOS_PLATAFORMA = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    //volatile para que el doble chequeo no publique un ejecutor a medio construir
+    private static volatile ExecutorService ejecutorIO;
+    private static volatile ScheduledExecutorService planificador;
+    private static final Object lock = new Object();
+
+    /**
+     * Ejecutor para tareas que bloquean esperando red o base de datos
+     * @return ExecutorService compartido
+     */
+    public static ExecutorService getEjecutorIO() {
+        ExecutorService ejecutor = ejecutorIO;
+        if (ejecutor == null) {
+            synchronized (lock) {
+                ejecutor = ejecutorIO;
+                if (ejecutor == null) {
+                    ejecutor = crearEjecutorIO();
+                    ejecutorIO = ejecutor;
+                }
+            }
+        }
+        return ejecutor;
+    }
+
+    /**
+     * Planificador para temporizadores (ventanas de lotes, limpiezas periódicas).
+     * Las tareas que programe deben ser cortas o delegar en getEjecutorIO().
+     * @return ScheduledExecutorService compartido
+     */
+    public static ScheduledExecutorService getPlanificador() {
+        ScheduledExecutorService actual = planificador;
+        if (actual == null) {
+            synchronized (lock) {
+                actual = planificador;
+                if (actual == null) {
+                    actual = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread hilo = new Thread(r, "smartsave-planificador");
+                        hilo.setDaemon(true);
+                        return hilo;
+                    });
+                    planificador = actual;
+                }
+            }
+        }
+        return actual;
+    }
+
+    public static <T> CompletableFuture<T> ejecutarAsync(Supplier<T> tarea) {
+        return CompletableFuture.supplyAsync(tarea, getEjecutorIO());
+    }
+
+    public static boolean usaHilosVirtuales() {
+        return Boolean.parseBoolean(System.getProperty(PROPIEDAD_HILOS_VIRTUALES, "true"));
+    }
+
+    private static ExecutorService crearEjecutorIO() {
+        if (usaHilosVirtuales()) {
+            System.out.println("Ejecutor de E/S configurado con hilos virtuales");
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("smartsave-io-", 0).factory());
+        }
+
+        System.out.println("Ejecutor de E/S configurado con " + HILOS_PLATAFORMA + " hilos de plataforma");
+        AtomicInteger contador = new AtomicInteger();
+        ThreadFactory fabrica = r -> {
+            Thread hilo = new Thread(r, "smartsave-io-" + contador.getAndIncrement());
+            hilo.setDaemon(true);
+            return hilo;
+        };
+        return Executors.newFixedThreadPool(HILOS_PLATAFORMA, fabrica);
+    }
+
+    public static void shutdown() {
+        synchronized (lock) {
+            if (planificador != null) {
+                planificador.shutdownNow();
+                planificador = null;
+            }
+            if (ejecutorIO != null) {
+                ejecutorIO.shutdown();
+                try {
+                    if (!ejecutorIO.awaitTermination(5, TimeUnit.SECONDS)) {
+                        ejecutorIO.shutdownNow();
+                    }
+                } catch (InterruptedException e) {
+                    ejecutorIO.shutdownNow();
+                    Thread.currentThread().interrupt();
+                }
+                ejecutorIO = null;
+            }
+        }
+    }
+}
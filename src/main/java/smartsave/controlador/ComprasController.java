@@ -1,5 +1,6 @@
 package smartsave.controlador;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
@@ -10,6 +11,8 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import smartsave.config.EjecutoresConfig;
 import smartsave.modelo.*;
 import smartsave.servicio.*;
 import smartsave.utilidad.EstilosApp;
@@ -65,10 +68,22 @@ public class ComprasController extends BaseController {
     @FXML private TableColumn<Producto, Void> productoAccionesColumn;
     @FXML private Button cerrarBusquedaButton;
 
-    private final ListaCompraServicio listaCompraServicio = new ListaCompraServicio();
-    private final ProductoServicio productoServicio = new ProductoServicio();
+    private final ListaCompraServicio listaCompraServicio = ContextoAplicacion.getInstancia().getListaCompraServicio();
+    private final ProductoServicio productoServicio = ContextoAplicacion.getInstancia().getProductoServicio();
     private final TransaccionServicio transaccionServicio = new TransaccionServicio();
 
+    //busqueda mientras se escribe: se espera a que el usuario pare de teclear y solo se pinta la ultima
+    private static final Duration ESPERA_TECLEO = Duration.millis(250);
+    private static final int MINIMO_CARACTERES_BUSQUEDA = 2;
+    private static final int LIMITE_RESULTADOS_LOCALES = 50;
+    private final PauseTransition esperaBusqueda = new PauseTransition(ESPERA_TECLEO);
+    private CompletableFuture<List<Producto>> busquedaEnCurso;
+    private long generacionBusqueda;
+    private long generacionCompleta;
+    //solo se pinta el ultimo listado y el ultimo detalle pedidos; los anteriores llegan tarde y se descartan
+    private long generacionListas;
+    private long generacionDetalle;
+
     private Long usuarioIdActualLocal;
     private Usuario usuarioActualLocal; 
     private ListaCompra listaSeleccionada = null;
@@ -155,6 +170,7 @@ public class ComprasController extends BaseController {
             configurarCeldaListaCompra();
         }
         configurarTablaProductos();
+        configurarBusquedaIncremental();
         configurarPanelCrearLista();
         ocultarDetalleLista();
         ocultarPanelCrearLista();
@@ -252,13 +268,16 @@ public class ComprasController extends BaseController {
                     if (getTableView().getItems().size() > getIndex() && getIndex() >= 0) {
                         ItemCompra item = getTableView().getItems().get(getIndex());
                         if (mostrarConfirmacion("Eliminar Producto", "¿Estás seguro de que deseas eliminar este producto de la lista?")) {
-                            Long listaId = listaSeleccionada.getId();
-                            Long usuarioId = listaSeleccionada.getUsuarioId();
-                            boolean eliminado = listaCompraServicio.eliminarItemDeLista(listaSeleccionada, item.getId());
-                            if (eliminado) {
-                                listaSeleccionada = listaCompraServicio.obtenerListaCompra(listaId, usuarioId);
-                                mostrarDetalleLista(listaSeleccionada);
-                            }
+                            ListaCompra lista = listaSeleccionada;
+                            EjecutoresConfig.ejecutarAsync(() ->
+                                listaCompraServicio.eliminarItemDeLista(lista, item.getId())
+                            ).thenAccept(eliminado -> Platform.runLater(() -> {
+                                //mostrarDetalleLista vuelve a leer la lista desde la base de datos
+                                if (eliminado) mostrarDetalleLista(lista);
+                            })).exceptionally(e -> {
+                                System.err.println("Error eliminando producto de la lista: " + e.getMessage());
+                                return null;
+                            });
                         }
                     }
                 });
@@ -310,18 +329,36 @@ public class ComprasController extends BaseController {
     }
 
     private void cargarListasCompra() {
+        cargarListasCompra(null);
+    }
+
+    /**
+     * Carga las listas del filtro actual fuera del hilo de JavaFX y, cuando
+     * llegan, selecciona listaASeleccionar si no es null.
+     */
+    private void cargarListasCompra(ListaCompra listaASeleccionar) {
         if (usuarioIdActualLocal == null) {
             disableUIComponents();
             return;
         }
         if (filtroListasComboBox == null || listasCompraListView == null) return;
-        String filtro = filtroListasComboBox.getValue();
-        ObservableList<ListaCompra> listas;
-        if ("Activas".equals(filtro)) listas = FXCollections.observableArrayList(listaCompraServicio.obtenerListasActivas(usuarioIdActualLocal));
-        else if ("Completadas".equals(filtro)) listas = FXCollections.observableArrayList(listaCompraServicio.obtenerListasCompletadas(usuarioIdActualLocal));
-        else listas = FXCollections.observableArrayList(listaCompraServicio.obtenerListasCompraUsuario(usuarioIdActualLocal));
-        listasCompraListView.setItems(listas);
-        if (listas.isEmpty()) ocultarDetalleLista();
+        final String filtro = filtroListasComboBox.getValue();
+        final Long usuarioId = usuarioIdActualLocal;
+        final long generacion = ++generacionListas;
+        EjecutoresConfig.ejecutarAsync(() -> {
+            if ("Activas".equals(filtro)) return listaCompraServicio.obtenerListasActivas(usuarioId);
+            if ("Completadas".equals(filtro)) return listaCompraServicio.obtenerListasCompletadas(usuarioId);
+            return listaCompraServicio.obtenerListasCompraUsuario(usuarioId);
+        }).thenAccept(resultado -> Platform.runLater(() -> {
+            if (generacion != generacionListas) return;
+            ObservableList<ListaCompra> listas = FXCollections.observableArrayList(resultado);
+            listasCompraListView.setItems(listas);
+            if (listas.isEmpty()) ocultarDetalleLista();
+            else if (listaASeleccionar != null) listasCompraListView.getSelectionModel().select(listaASeleccionar);
+        })).exceptionally(e -> {
+            Platform.runLater(() -> navegacionServicio.mostrarAlertaError("Error", "No se pudieron cargar las listas de compra: " + e.getMessage()));
+            return null;
+        });
     }
 
     private void mostrarDetalleLista(ListaCompra lista) {
@@ -332,12 +369,30 @@ public class ComprasController extends BaseController {
             ocultarDetalleLista(); return;
         }
 
-        ListaCompra listaActualizada = listaCompraServicio.obtenerListaCompra(lista.getId(), usuarioIdActualLocal);
-        if (listaActualizada == null) {
-            ocultarDetalleLista();
-            navegacionServicio.mostrarAlertaError("Error", "No se pudo cargar la lista seleccionada.");
-            return;
-        }
+        final Long usuarioId = usuarioIdActualLocal;
+        final long generacion = ++generacionDetalle;
+        EjecutoresConfig.ejecutarAsync(() ->
+            listaCompraServicio.obtenerListaCompra(lista.getId(), usuarioId)
+        ).thenAccept(listaActualizada -> Platform.runLater(() -> {
+            //si entretanto se ha seleccionado otra lista, manda la mas nueva
+            if (generacion != generacionDetalle) return;
+            if (listaActualizada == null) {
+                ocultarDetalleLista();
+                navegacionServicio.mostrarAlertaError("Error", "No se pudo cargar la lista seleccionada.");
+                return;
+            }
+            pintarDetalleLista(listaActualizada);
+        })).exceptionally(e -> {
+            Platform.runLater(() -> {
+                if (generacion != generacionDetalle) return;
+                ocultarDetalleLista();
+                navegacionServicio.mostrarAlertaError("Error", "No se pudo cargar la lista seleccionada: " + e.getMessage());
+            });
+            return null;
+        });
+    }
+
+    private void pintarDetalleLista(ListaCompra listaActualizada) {
         listaSeleccionada = listaActualizada;
         detalleListaPane.setVisible(true);
         detalleListaPane.setManaged(true);
@@ -359,6 +414,8 @@ public class ComprasController extends BaseController {
     }
 
     private void ocultarDetalleLista() {
+        //una carga de detalle aun pendiente ya no debe volver a mostrar el panel
+        generacionDetalle++;
         if (detalleListaPane != null) {
             detalleListaPane.setVisible(false);
             detalleListaPane.setManaged(false);
@@ -449,30 +506,54 @@ public class ComprasController extends BaseController {
                 navegacionServicio.mostrarAlertaError("Presupuesto inválido", "El presupuesto debe ser mayor que cero.");
                 return;
             }
+            final Long usuarioId = usuarioIdActualLocal;
+            if (guardarListaButton != null) guardarListaButton.setDisable(true);
             if (modoEdicion && listaSeleccionada != null) {
-                listaSeleccionada.setNombre(nombre);
-                listaSeleccionada.setModalidadAhorro(modalidad);
-                listaSeleccionada.setPresupuestoMaximo(presupuesto);
-                listaSeleccionada.setFechaPlanificada(fechaPlanificada);
-                listaCompraServicio.actualizarListaCompra(listaSeleccionada);
-                mostrarDetalleLista(listaSeleccionada);
-                navegacionServicio.mostrarAlertaInformacion("Lista actualizada", "La lista de compra ha sido actualizada correctamente.");
+                ListaCompra lista = listaSeleccionada;
+                lista.setNombre(nombre);
+                lista.setModalidadAhorro(modalidad);
+                lista.setPresupuestoMaximo(presupuesto);
+                lista.setFechaPlanificada(fechaPlanificada);
+                EjecutoresConfig.ejecutarAsync(() ->
+                    listaCompraServicio.actualizarListaCompra(lista)
+                ).thenAccept(actualizada -> Platform.runLater(() -> {
+                    listaGuardada();
+                    mostrarDetalleLista(lista);
+                    navegacionServicio.mostrarAlertaInformacion("Lista actualizada", "La lista de compra ha sido actualizada correctamente.");
+                })).exceptionally(e -> errorGuardandoLista(e));
             } else {
-                ListaCompra nuevaLista;
-                if (generarAutomatico) nuevaLista = listaCompraServicio.generarListaOptimizada(usuarioIdActualLocal, nombre, modalidad, presupuesto);
-                else nuevaLista = listaCompraServicio.crearListaCompra(usuarioIdActualLocal, nombre, modalidad, presupuesto);
-                nuevaLista.setFechaPlanificada(fechaPlanificada);
-                listaCompraServicio.actualizarListaCompra(nuevaLista);
-                cargarListasCompra();
-                if (listasCompraListView != null) listasCompraListView.getSelectionModel().select(nuevaLista);
-                navegacionServicio.mostrarAlertaInformacion("Lista creada", "La lista de compra ha sido creada correctamente.");
+                //generar la lista optimizada recorre el catalogo y puede tardar: nunca en el hilo de JavaFX
+                EjecutoresConfig.ejecutarAsync(() -> {
+                    ListaCompra nuevaLista;
+                    if (generarAutomatico) nuevaLista = listaCompraServicio.generarListaOptimizada(usuarioId, nombre, modalidad, presupuesto);
+                    else nuevaLista = listaCompraServicio.crearListaCompra(usuarioId, nombre, modalidad, presupuesto);
+                    nuevaLista.setFechaPlanificada(fechaPlanificada);
+                    listaCompraServicio.actualizarListaCompra(nuevaLista);
+                    return nuevaLista;
+                }).thenAccept(nuevaLista -> Platform.runLater(() -> {
+                    listaGuardada();
+                    cargarListasCompra(nuevaLista);
+                    navegacionServicio.mostrarAlertaInformacion("Lista creada", "La lista de compra ha sido creada correctamente.");
+                })).exceptionally(e -> errorGuardandoLista(e));
             }
-            ocultarPanelCrearLista();
         } catch (NumberFormatException e) {
             navegacionServicio.mostrarAlertaError("Formato incorrecto", "Por favor, ingresa un presupuesto válido.");
         }
     }
 
+    private void listaGuardada() {
+        if (guardarListaButton != null) guardarListaButton.setDisable(false);
+        ocultarPanelCrearLista();
+    }
+
+    private Void errorGuardandoLista(Throwable e) {
+        Platform.runLater(() -> {
+            if (guardarListaButton != null) guardarListaButton.setDisable(false);
+            navegacionServicio.mostrarAlertaError("Error", "No se pudo guardar la lista de compra: " + e.getMessage());
+        });
+        return null;
+    }
+
     @FXML private void handleCancelarLista(ActionEvent event) { ocultarPanelCrearLista(); }
 
     @FXML
@@ -534,14 +615,37 @@ public class ComprasController extends BaseController {
         mostrarPanelBuscarProducto();
     }
 
+    private void configurarBusquedaIncremental() {
+        if (buscarProductoField == null) return;
+        esperaBusqueda.setOnFinished(e -> lanzarBusqueda(false));
+        buscarProductoField.textProperty().addListener((obs, anterior, actual) -> esperaBusqueda.playFromStart());
+    }
+
     @FXML
     private void handleBuscarProducto(ActionEvent event) {
+        esperaBusqueda.stop();
+        lanzarBusqueda(true);
+    }
+
+    /**
+     * Busca el texto del campo. Primero se pintan los resultados del índice local y,
+     * cuando llega la búsqueda completa (BD + Mercadona, filtrada por la modalidad),
+     * se sustituyen por ella. Cada búsqueda cancela la anterior y lleva un número de
+     * generación: una respuesta que llega tarde ya no pisa a la de un texto más nuevo.
+     * @param explicita true si viene del botón o de Enter; solo entonces se muestran avisos
+     */
+    private void lanzarBusqueda(boolean explicita) {
         if (buscarProductoField == null || buscarProductoButton == null || resultadosProductosTableView == null) return;
         String termino = buscarProductoField.getText().trim();
 
-        
         if (listaSeleccionada == null) {
-            navegacionServicio.mostrarAlertaError("Seleccione una Lista", "Por favor, selecciona primero una lista de compra para poder buscar productos.");
+            if (explicita) {
+                navegacionServicio.mostrarAlertaError("Seleccione una Lista", "Por favor, selecciona primero una lista de compra para poder buscar productos.");
+            }
+            return;
+        }
+        if (!explicita && termino.length() < MINIMO_CARACTERES_BUSQUEDA) {
+            cancelarBusqueda();
             return;
         }
 
@@ -549,41 +653,61 @@ public class ComprasController extends BaseController {
         ModalidadAhorro modalidadActual = modalidadServicio.obtenerModalidadPorNombre(listaSeleccionada.getModalidadAhorro());
 
         if (modalidadActual == null) {
-            navegacionServicio.mostrarAlertaError("Error de Modalidad", "No se pudo cargar la modalidad de ahorro de la lista. Seleccionando 'Equilibrado' por defecto.");
+            if (explicita) {
+                navegacionServicio.mostrarAlertaError("Error de Modalidad", "No se pudo cargar la modalidad de ahorro de la lista. Seleccionando 'Equilibrado' por defecto.");
+            }
             modalidadActual = modalidadServicio.obtenerModalidadPorNombre("Equilibrado");
-            if (modalidadActual == null) { 
-                navegacionServicio.mostrarAlertaError("Error Crítico", "No se encontraron las modalidades de ahorro.");
+            if (modalidadActual == null) {
+                if (explicita) navegacionServicio.mostrarAlertaError("Error Crítico", "No se encontraron las modalidades de ahorro.");
                 return;
             }
         }
-        
 
-        buscarProductoButton.setDisable(true);
-        buscarProductoButton.setText("Buscando...");
-
-        
+        cancelarBusqueda();
+        final long generacion = ++generacionBusqueda;
         final ModalidadAhorro modalidadParaBusqueda = modalidadActual;
+        buscarProductoButton.setText("Buscando...");
 
-        CompletableFuture.supplyAsync(() -> {
-            
-            return productoServicio.buscarProductos(termino, modalidadParaBusqueda);
-        }).thenAccept(resultados -> Platform.runLater(() -> {
+        EjecutoresConfig.ejecutarAsync(() ->
+            productoServicio.buscarProductosLocales(termino, LIMITE_RESULTADOS_LOCALES)
+        ).thenAccept(locales -> Platform.runLater(() -> {
+            if (generacion == generacionBusqueda && generacion != generacionCompleta && !locales.isEmpty()) {
+                resultadosProductosTableView.setItems(FXCollections.observableArrayList(locales));
+            }
+        }));
+
+        busquedaEnCurso = EjecutoresConfig.ejecutarAsync(() ->
+            productoServicio.buscarProductos(termino, modalidadParaBusqueda)
+        );
+        busquedaEnCurso.thenAccept(resultados -> Platform.runLater(() -> {
+            if (generacion != generacionBusqueda) return;
+            generacionCompleta = generacion;
             resultadosProductosTableView.setItems(FXCollections.observableArrayList(resultados));
-            buscarProductoButton.setDisable(false);
             buscarProductoButton.setText("Buscar");
-            if (resultados.isEmpty()) {
+            if (resultados.isEmpty() && explicita) {
                 navegacionServicio.mostrarAlertaInformacion("Búsqueda sin resultados", "No se encontraron productos para: " + termino);
             }
         })).exceptionally(e -> {
             Platform.runLater(() -> {
+                //la cancelacion la provoca una busqueda mas nueva, que ya se encarga del boton
+                if (generacion != generacionBusqueda) return;
                 navegacionServicio.mostrarAlertaError("Error en búsqueda", "Se produjo un error al buscar productos: " + e.getMessage());
-                buscarProductoButton.setDisable(false);
                 buscarProductoButton.setText("Buscar");
             });
             return null;
         });
     }
 
+    private void cancelarBusqueda() {
+        if (busquedaEnCurso != null) {
+            busquedaEnCurso.cancel(false);
+            busquedaEnCurso = null;
+        }
+        //invalida tambien los resultados locales que aun no se hayan pintado
+        generacionBusqueda++;
+        if (buscarProductoButton != null) buscarProductoButton.setText("Buscar");
+    }
+
     @FXML private void handleCerrarBusqueda(ActionEvent event) { ocultarPanelBuscarProducto(); }
 
     private void mostrarPanelCrearLista() {
@@ -604,18 +728,21 @@ public class ComprasController extends BaseController {
     private void mostrarPanelBuscarProducto() {
         if (buscarProductoField != null) buscarProductoField.clear();
         if (resultadosProductosTableView != null) resultadosProductosTableView.setItems(FXCollections.observableArrayList());
-        try {
-            if (productoServicio != null) {
-                List<Producto> productosPopulares = productoServicio.obtenerTodosProductos().stream().limit(15).collect(Collectors.toList()); 
-                if (resultadosProductosTableView != null && !productosPopulares.isEmpty()) {
+        if (productoServicio != null) {
+            EjecutoresConfig.ejecutarAsync(() ->
+                productoServicio.obtenerTodosProductos().stream().limit(15).collect(Collectors.toList())
+            ).thenAccept(productosPopulares -> Platform.runLater(() -> {
+                if (resultadosProductosTableView != null && !productosPopulares.isEmpty()
+                        && resultadosProductosTableView.getItems().isEmpty()) {
                     resultadosProductosTableView.setItems(FXCollections.observableArrayList(productosPopulares));
                     System.out.println("Cargados " + productosPopulares.size() + " productos populares");
-                } else if (resultadosProductosTableView != null) {
+                } else if (resultadosProductosTableView != null && productosPopulares.isEmpty()) {
                     System.out.println("No se encontraron productos populares");
                 }
-            }
-        } catch (Exception e) {
-            System.err.println("Error cargando productos populares: " + e.getMessage());
+            })).exceptionally(e -> {
+                System.err.println("Error cargando productos populares: " + e.getMessage());
+                return null;
+            });
         }
         if (agregarProductoPane != null) {
             agregarProductoPane.setVisible(true);
@@ -625,6 +752,8 @@ public class ComprasController extends BaseController {
     }
 
     private void ocultarPanelBuscarProducto() {
+        esperaBusqueda.stop();
+        cancelarBusqueda();
         if (agregarProductoPane != null) {
             agregarProductoPane.setVisible(false);
             agregarProductoPane.setManaged(false);
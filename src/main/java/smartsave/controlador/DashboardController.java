@@ -12,6 +12,7 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
+import smartsave.config.EjecutoresConfig;
 import smartsave.modelo.PerfilNutricional;
 import smartsave.modelo.Transaccion;
 import smartsave.servicio.PerfilNutricionalServicio;
@@ -24,6 +25,8 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class DashboardController extends BaseController {
 
@@ -177,9 +180,26 @@ public class DashboardController extends BaseController {
         cargarGraficoEvolucion();
     }
 
+    /**
+     * Las consultas a la base de datos se hacen en el ejecutor de la aplicacion
+     * y solo el pintado vuelve al hilo de JavaFX.
+     */
+    private <T> void cargarEnSegundoPlano(Supplier<T> consulta, Consumer<T> pintar, String descripcion) {
+        EjecutoresConfig.ejecutarAsync(consulta)
+                .thenAccept(resultado -> Platform.runLater(() -> pintar.accept(resultado)))
+                .exceptionally(e -> {
+                    System.err.println("Error cargando " + descripcion + ": " + e.getMessage());
+                    return null;
+                });
+    }
+
     private void cargarTransaccionesRecientes() {
-        List<Transaccion> transacciones = transaccionServicio.obtenerTransaccionesPorPeriodo(
-                usuarioIdActualLocal, LocalDate.now().minusDays(30), LocalDate.now());
+        final Long usuarioId = usuarioIdActualLocal;
+        cargarEnSegundoPlano(() -> transaccionServicio.obtenerTransaccionesPorPeriodo(
+                usuarioId, LocalDate.now().minusDays(30), LocalDate.now()), this::pintarTransaccionesRecientes, "transacciones recientes");
+    }
+
+    private void pintarTransaccionesRecientes(List<Transaccion> transacciones) {
         if (transacciones.size() > 5) {
             transacciones = transacciones.subList(0, 5);
         }
@@ -188,17 +208,31 @@ public class DashboardController extends BaseController {
         }
     }
 
+    private record ResumenFinanciero(double ingresosMesActual, double gastosMesActual, double balanceActual,
+                                     double ingresosMesAnterior, double gastosMesAnterior) {}
+
     private void cargarResumenFinanciero() {
-        LocalDate fechaActual = LocalDate.now();
-        LocalDate inicioMesActual = fechaActual.withDayOfMonth(1);
-        LocalDate inicioMesAnterior = fechaActual.minusMonths(1).withDayOfMonth(1);
-        LocalDate finMesAnterior = inicioMesActual.minusDays(1);
-
-        double ingresosMesActual = transaccionServicio.obtenerTotalIngresos(usuarioIdActualLocal, inicioMesActual, fechaActual);
-        double gastosMesActual = transaccionServicio.obtenerTotalGastos(usuarioIdActualLocal, inicioMesActual, fechaActual);
-        double balanceActual = transaccionServicio.obtenerBalance(usuarioIdActualLocal, null, fechaActual);
-        double ingresosMesAnterior = transaccionServicio.obtenerTotalIngresos(usuarioIdActualLocal, inicioMesAnterior, finMesAnterior);
-        double gastosMesAnterior = transaccionServicio.obtenerTotalGastos(usuarioIdActualLocal, inicioMesAnterior, finMesAnterior);
+        final Long usuarioId = usuarioIdActualLocal;
+        cargarEnSegundoPlano(() -> {
+            LocalDate fechaActual = LocalDate.now();
+            LocalDate inicioMesActual = fechaActual.withDayOfMonth(1);
+            LocalDate inicioMesAnterior = fechaActual.minusMonths(1).withDayOfMonth(1);
+            LocalDate finMesAnterior = inicioMesActual.minusDays(1);
+            return new ResumenFinanciero(
+                    transaccionServicio.obtenerTotalIngresos(usuarioId, inicioMesActual, fechaActual),
+                    transaccionServicio.obtenerTotalGastos(usuarioId, inicioMesActual, fechaActual),
+                    transaccionServicio.obtenerBalance(usuarioId, null, fechaActual),
+                    transaccionServicio.obtenerTotalIngresos(usuarioId, inicioMesAnterior, finMesAnterior),
+                    transaccionServicio.obtenerTotalGastos(usuarioId, inicioMesAnterior, finMesAnterior));
+        }, this::pintarResumenFinanciero, "resumen financiero");
+    }
+
+    private void pintarResumenFinanciero(ResumenFinanciero resumen) {
+        double ingresosMesActual = resumen.ingresosMesActual();
+        double gastosMesActual = resumen.gastosMesActual();
+        double balanceActual = resumen.balanceActual();
+        double ingresosMesAnterior = resumen.ingresosMesAnterior();
+        double gastosMesAnterior = resumen.gastosMesAnterior();
         double cambioIngresos = calcularPorcentajeCambio(ingresosMesActual, ingresosMesAnterior);
         double cambioGastos = calcularPorcentajeCambio(gastosMesActual, gastosMesAnterior);
         double ahorros = balanceActual * 0.3;
@@ -234,10 +268,18 @@ public class DashboardController extends BaseController {
     }
 
     private void cargarDatosNutricionales() {
-        if (perfilNutricionalServicio.tienePerfil(usuarioIdActualLocal)) {
-            PerfilNutricional perfil = perfilNutricionalServicio.obtenerPerfilPorUsuario(usuarioIdActualLocal);
-            if (perfil != null) {
-                int puntuacion = perfilNutricionalServicio.calcularPuntuacionNutricional(perfil);
+        final Long usuarioId = usuarioIdActualLocal;
+        //null si no hay perfil; -1 si lo hay pero no se ha podido leer
+        cargarEnSegundoPlano(() -> {
+            if (!perfilNutricionalServicio.tienePerfil(usuarioId)) return null;
+            PerfilNutricional perfil = perfilNutricionalServicio.obtenerPerfilPorUsuario(usuarioId);
+            return perfil != null ? perfilNutricionalServicio.calcularPuntuacionNutricional(perfil) : -1;
+        }, this::pintarDatosNutricionales, "datos nutricionales");
+    }
+
+    private void pintarDatosNutricionales(Integer puntuacion) {
+        if (puntuacion != null) {
+            if (puntuacion >= 0) {
                 if (nutritionScore != null) nutritionScore.setText(puntuacion + "/100");
                 String estado;
                 Color color;
@@ -260,9 +302,14 @@ public class DashboardController extends BaseController {
     }
 
     private void cargarGraficosGastos() {
+        final Long usuarioId = usuarioIdActualLocal;
         LocalDate inicioMes = LocalDate.now().withDayOfMonth(1);
         LocalDate hoy = LocalDate.now();
-        Map<String, Double> gastosPorCategoria = transaccionServicio.obtenerGastosPorCategoria(usuarioIdActualLocal, inicioMes, hoy);
+        cargarEnSegundoPlano(() -> transaccionServicio.obtenerGastosPorCategoria(usuarioId, inicioMes, hoy),
+                this::pintarGraficosGastos, "gastos por categoria");
+    }
+
+    private void pintarGraficosGastos(Map<String, Double> gastosPorCategoria) {
         ObservableList<PieChart.Data> pieChartData = FXCollections.observableArrayList();
         for (Map.Entry<String, Double> entry : gastosPorCategoria.entrySet()) {
             pieChartData.add(new PieChart.Data(entry.getKey() + " - €" + String.format("%.2f", entry.getValue()), entry.getValue()));
@@ -279,6 +326,23 @@ public class DashboardController extends BaseController {
 
     private void cargarGraficoEvolucion() {
         if (evolutionLineChart == null) return;
+        final Long usuarioId = usuarioIdActualLocal;
+        LocalDate hoy = LocalDate.now();
+        //ingresos y gastos de los ultimos seis meses, del mas antiguo al actual
+        cargarEnSegundoPlano(() -> {
+            double[][] totales = new double[6][2];
+            for (int i = 5; i >= 0; i--) {
+                LocalDate mesActual = hoy.minusMonths(i);
+                LocalDate inicioMes = mesActual.withDayOfMonth(1);
+                LocalDate finMes = mesActual.plusMonths(1).withDayOfMonth(1).minusDays(1);
+                totales[5 - i][0] = transaccionServicio.obtenerTotalIngresos(usuarioId, inicioMes, finMes);
+                totales[5 - i][1] = transaccionServicio.obtenerTotalGastos(usuarioId, inicioMes, finMes);
+            }
+            return totales;
+        }, totales -> pintarGraficoEvolucion(hoy, totales), "evolucion mensual");
+    }
+
+    private void pintarGraficoEvolucion(LocalDate hoy, double[][] totales) {
         evolutionLineChart.getData().clear();
 
         XYChart.Series<String, Number> serieIngresos = new XYChart.Series<>();
@@ -290,17 +354,13 @@ public class DashboardController extends BaseController {
         XYChart.Series<String, Number> serieBalance = new XYChart.Series<>();
         serieBalance.setName("Balance");
 
-        LocalDate hoy = LocalDate.now();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM");
 
         for (int i = 5; i >= 0; i--) {
-            LocalDate mesActual = hoy.minusMonths(i);
-            LocalDate inicioMes = mesActual.withDayOfMonth(1);
-            LocalDate finMes = mesActual.plusMonths(1).withDayOfMonth(1).minusDays(1);
-            String nombreMes = mesActual.format(formatter);
+            String nombreMes = hoy.minusMonths(i).format(formatter);
 
-            double ingresos = transaccionServicio.obtenerTotalIngresos(usuarioIdActualLocal, inicioMes, finMes);
-            double gastos = transaccionServicio.obtenerTotalGastos(usuarioIdActualLocal, inicioMes, finMes);
+            double ingresos = totales[5 - i][0];
+            double gastos = totales[5 - i][1];
             double balance = ingresos - gastos;
 
             serieIngresos.getData().add(new XYChart.Data<>(nombreMes, ingresos));
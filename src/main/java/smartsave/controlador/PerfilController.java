@@ -68,7 +68,7 @@ public class PerfilController extends BaseController {
     private final UsuarioServicio usuarioServicio = new UsuarioServicio();
     private final TransaccionServicio transaccionServicio = new TransaccionServicio();
     private final PerfilNutricionalServicio perfilNutricionalServicio = new PerfilNutricionalServicio();
-    private final ListaCompraServicio listaCompraServicio = new ListaCompraServicio();
+    private final ListaCompraServicio listaCompraServicio = ContextoAplicacion.getInstancia().getListaCompraServicio();
 
 
     private Long usuarioIdActualLocal;
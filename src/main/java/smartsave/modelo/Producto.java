@@ -2,6 +2,7 @@ package smartsave.modelo;
 
 import jakarta.persistence.*;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
@@ -32,6 +33,15 @@ public class Producto {
     @Embedded
     private NutricionProducto infoNutricional;
 
+    //los mantiene CatalogoCrawler al volcar el catalogo de Mercadona
+    private LocalDateTime ultimaVezVisto;
+
+    private LocalDateTime ultimoCambioPrecio;
+
+    //lo que contiene el producto segun RestriccionesDieteticas; -1 mientras no se ha calculado
+    @Transient
+    private int mascaraDietetica = -1;
+
     @Embeddable
     public static class NutricionProducto {
         @Column(precision = 8, scale = 2)
@@ -140,7 +150,10 @@ public class Producto {
     public String getMarca() { return marca; }
     public void setMarca(String marca) { this.marca = marca; }
     public String getCategoria() { return categoria; }
-    public void setCategoria(String categoria) { this.categoria = categoria; }
+    public void setCategoria(String categoria) {
+        this.categoria = categoria;
+        this.mascaraDietetica = -1;
+    }
 
     public BigDecimal getPrecioBD() { return precio; }
     public void setPrecioBD(BigDecimal precio) { this.precio = precio; }
@@ -152,7 +165,14 @@ public class Producto {
     public boolean isDisponible() { return disponible; }
     public void setDisponible(boolean disponible) { this.disponible = disponible; }
     public NutricionProducto getInfoNutricional() { return infoNutricional; }
-    public void setInfoNutricional(NutricionProducto infoNutricional) { this.infoNutricional = infoNutricional; }
+    public void setInfoNutricional(NutricionProducto infoNutricional) {
+        this.infoNutricional = infoNutricional;
+        this.mascaraDietetica = -1;
+    }
+    public LocalDateTime getUltimaVezVisto() { return ultimaVezVisto; }
+    public void setUltimaVezVisto(LocalDateTime ultimaVezVisto) { this.ultimaVezVisto = ultimaVezVisto; }
+    public LocalDateTime getUltimoCambioPrecio() { return ultimoCambioPrecio; }
+    public void setUltimoCambioPrecio(LocalDateTime ultimoCambioPrecio) { this.ultimoCambioPrecio = ultimoCambioPrecio; }
 
     public double getRelacionProteinaPrecio() {
         double precioValue = getPrecio();
@@ -166,20 +186,28 @@ public class Producto {
         return infoNutricional.getCalorias() / precioValue;
     }
 
+    @PostLoad
+    @PrePersist
+    @PreUpdate
+    void calcularMascaraDietetica() {
+        mascaraDietetica = RestriccionesDieteticas.calcularMascara(categoria, infoNutricional);
+    }
+
+    public int getMascaraDietetica() {
+        //los productos que llegan de la API no pasan por los callbacks de JPA
+        if (mascaraDietetica < 0) calcularMascaraDietetica();
+        return mascaraDietetica;
+    }
+
+    /**
+     * @param prohibido máscara compilada con RestriccionesDieteticas.compilar
+     */
+    public boolean cumpleRestricciones(int prohibido) {
+        return (getMascaraDietetica() & prohibido) == 0;
+    }
+
     public boolean cumpleRestricciones(List<String> restricciones) {
-        if (restricciones.contains("Sin gluten") && categoria.toLowerCase().contains("pan")) {
-            return false;
-        }
-        if (restricciones.contains("Sin lactosa") &&
-                (categoria.toLowerCase().contains("lácteo") || categoria.toLowerCase().contains("lacteo"))) {
-            return false;
-        }
-        if (restricciones.contains("Vegano") &&
-                (categoria.toLowerCase().contains("carne") || categoria.toLowerCase().contains("pescado") ||
-                        categoria.toLowerCase().contains("lácteo") || categoria.toLowerCase().contains("lacteo"))) {
-            return false;
-        }
-        return true;
+        return cumpleRestricciones(RestriccionesDieteticas.compilar(restricciones));
     }
 
     @Override
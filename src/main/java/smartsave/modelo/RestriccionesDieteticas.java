@@ -0,0 +1,79 @@
+package smartsave.modelo;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Restricciones alimentarias como máscaras de bits.
+ *
+ * Cada producto tiene una máscara con lo que contiene (gluten, lactosa, carne...),
+ * calculada a partir de su categoría y su información nutricional al cargarlo o
+ * guardarlo. Las restricciones del usuario se compilan una vez en la máscara de lo
+ * que no puede contener, y comprobar un producto es un AND.
+ */
+public final class RestriccionesDieteticas {
+
+    public static final int GLUTEN = 1;
+    public static final int LACTOSA = 1 << 1;
+    public static final int LACTEO = 1 << 2;
+    public static final int CARNE_O_PESCADO = 1 << 3;
+    public static final int HUEVO = 1 << 4;
+    public static final int ALTO_EN_SODIO = 1 << 5;
+    public static final int ALTO_EN_AZUCAR = 1 << 6;
+
+    //por encima de estos valores (por 100 g) el producto no es "bajo en"
+    private static final double MAXIMO_SODIO = 500;
+    private static final double MAXIMO_AZUCARES = 10;
+
+    private RestriccionesDieteticas() {
+    }
+
+    /**
+     * Máscara de lo que contiene un producto.
+     */
+    public static int calcularMascara(String categoria, Producto.NutricionProducto info) {
+        int mascara = 0;
+        String categoriaLower = categoria != null ? categoria.toLowerCase(Locale.ROOT) : "";
+
+        if (contieneAlguna(categoriaLower, "pan", "pasta", "galleta", "cereal")) mascara |= GLUTEN;
+        if (contieneAlguna(categoriaLower, "lácteo", "lacteo", "leche", "queso", "yogur")) mascara |= LACTOSA;
+        if (contieneAlguna(categoriaLower, "lácteo", "lacteo")) mascara |= LACTEO;
+        if (contieneAlguna(categoriaLower, "carne", "pescado")) mascara |= CARNE_O_PESCADO;
+        if (categoriaLower.contains("huevo")) mascara |= HUEVO;
+
+        if (info != null) {
+            if (info.getSodio() > MAXIMO_SODIO) mascara |= ALTO_EN_SODIO;
+            if (info.getAzucares() > MAXIMO_AZUCARES) mascara |= ALTO_EN_AZUCAR;
+        }
+        return mascara;
+    }
+
+    /**
+     * Máscara de lo que no puede contener un producto para cumplir las restricciones.
+     * Las restricciones desconocidas se ignoran.
+     */
+    public static int compilar(List<String> restricciones) {
+        int prohibido = 0;
+        if (restricciones == null) return prohibido;
+        for (String restriccion : restricciones) {
+            if (restriccion == null) continue;
+            switch (restriccion.toLowerCase(Locale.ROOT)) {
+                case "sin gluten" -> prohibido |= GLUTEN;
+                case "sin lactosa" -> prohibido |= LACTOSA;
+                case "vegano" -> prohibido |= CARNE_O_PESCADO | LACTEO | HUEVO;
+                case "vegetariano" -> prohibido |= CARNE_O_PESCADO;
+                case "bajo en sodio" -> prohibido |= ALTO_EN_SODIO;
+                case "bajo en azúcar", "bajo en azucar" -> prohibido |= ALTO_EN_AZUCAR;
+                default -> { }
+            }
+        }
+        return prohibido;
+    }
+
+    private static boolean contieneAlguna(String texto, String... partes) {
+        for (String parte : partes) {
+            if (texto.contains(parte)) return true;
+        }
+        return false;
+    }
+}
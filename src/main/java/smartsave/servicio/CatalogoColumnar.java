@@ -0,0 +1,179 @@
+package smartsave.servicio;
+
+import smartsave.modelo.Producto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copia del catálogo por columnas para los recorridos que ordenan y filtran
+ * todos los productos (lista optimizada, productos compatibles).
+ *
+ * Precio y macronutrientes se guardan como double[] y la categoría como código
+ * entero, así que los bucles y comparaciones no convierten BigDecimal a double en
+ * cada acceso. Los cambios de un producto solo tocan su fila (índice por id); los
+ * lectores trabajan sobre una Instantanea inmutable, que se vuelve a copiar de
+ * las columnas solo si ha habido cambios desde la última.
+ */
+public class CatalogoColumnar {
+    private static final int CAPACIDAD_MINIMA = 16;
+
+    private int tamano;
+    private Producto[] productos;
+    private long[] ids;
+    private double[] precios;
+    private double[] calorias;
+    private double[] proteinas;
+    private double[] carbohidratos;
+    private double[] grasas;
+    private int[] categorias;
+    private int[] mascaras;
+
+    private final Map<Long, Integer> filaPorId = new HashMap<>();
+    private final Map<String, Integer> codigoPorCategoria = new HashMap<>();
+    private final List<String> nombresCategoria = new ArrayList<>();
+
+    private Instantanea instantanea;
+
+    /**
+     * Vista inmutable de las columnas, con una fila por producto. Los arrays se
+     * comparten entre todos los lectores y no se deben modificar.
+     */
+    public record Instantanea(int tamano, Producto[] productos, long[] ids, double[] precios,
+                              double[] calorias, double[] proteinas, double[] carbohidratos, double[] grasas,
+                              int[] categorias, List<String> nombresCategoria, int[] mascaras) {
+
+        /**
+         * @return código de la categoría (comparación exacta) o -1 si ningún producto la tiene
+         */
+        public int codigoCategoria(String categoria) {
+            return nombresCategoria.indexOf(categoria);
+        }
+
+        /**
+         * Filas de los productos que no contienen nada de la máscara prohibida
+         * (ver RestriccionesDieteticas.compilar), en orden de fila.
+         */
+        public int[] filasCompatibles(int prohibido) {
+            int[] filas = new int[tamano];
+            int compatibles = 0;
+            for (int i = 0; i < tamano; i++) {
+                if ((mascaras[i] & prohibido) == 0) filas[compatibles++] = i;
+            }
+            return Arrays.copyOf(filas, compatibles);
+        }
+    }
+
+    public CatalogoColumnar(List<Producto> productosIniciales) {
+        reservar(Math.max(CAPACIDAD_MINIMA, productosIniciales.size()));
+        for (Producto producto : productosIniciales) {
+            if (producto != null && producto.getId() != null && producto.isDisponible()) escribir(producto);
+        }
+    }
+
+    /**
+     * Actualiza la fila del producto, la añade si es nuevo o la quita si ya no está disponible.
+     */
+    public synchronized void actualizar(Producto producto) {
+        if (producto == null || producto.getId() == null) return;
+        if (!producto.isDisponible()) {
+            eliminar(producto.getId());
+            return;
+        }
+        escribir(producto);
+        instantanea = null;
+    }
+
+    /**
+     * actualizar(Producto) para cada uno, con un solo cerrojo para todo el lote.
+     */
+    public synchronized void actualizar(Collection<Producto> productos) {
+        for (Producto producto : productos) {
+            actualizar(producto);
+        }
+    }
+
+    /**
+     * Quita la fila del producto; la última fila ocupa su hueco.
+     */
+    public synchronized void eliminar(Long id) {
+        Integer fila = filaPorId.remove(id);
+        if (fila == null) return;
+        int ultima = --tamano;
+        if (fila != ultima) {
+            productos[fila] = productos[ultima];
+            ids[fila] = ids[ultima];
+            precios[fila] = precios[ultima];
+            calorias[fila] = calorias[ultima];
+            proteinas[fila] = proteinas[ultima];
+            carbohidratos[fila] = carbohidratos[ultima];
+            grasas[fila] = grasas[ultima];
+            categorias[fila] = categorias[ultima];
+            mascaras[fila] = mascaras[ultima];
+            filaPorId.put(ids[fila], fila);
+        }
+        productos[ultima] = null;
+        instantanea = null;
+    }
+
+    public synchronized Instantanea instantanea() {
+        if (instantanea == null) {
+            instantanea = new Instantanea(tamano, Arrays.copyOf(productos, tamano), Arrays.copyOf(ids, tamano),
+                    Arrays.copyOf(precios, tamano), Arrays.copyOf(calorias, tamano), Arrays.copyOf(proteinas, tamano),
+                    Arrays.copyOf(carbohidratos, tamano), Arrays.copyOf(grasas, tamano),
+                    Arrays.copyOf(categorias, tamano), List.copyOf(nombresCategoria), Arrays.copyOf(mascaras, tamano));
+        }
+        return instantanea;
+    }
+
+    public synchronized int getTamano() {
+        return tamano;
+    }
+
+    private void escribir(Producto producto) {
+        Integer existente = filaPorId.get(producto.getId());
+        int fila;
+        if (existente != null) {
+            fila = existente;
+        } else {
+            if (tamano == ids.length) reservar(ids.length * 2);
+            fila = tamano++;
+            filaPorId.put(producto.getId(), fila);
+        }
+
+        Producto.NutricionProducto info = producto.getInfoNutricional();
+        productos[fila] = producto;
+        ids[fila] = producto.getId();
+        precios[fila] = producto.getPrecio();
+        calorias[fila] = info != null ? info.getCalorias() : 0;
+        proteinas[fila] = info != null ? info.getProteinas() : 0;
+        carbohidratos[fila] = info != null ? info.getCarbohidratos() : 0;
+        grasas[fila] = info != null ? info.getGrasas() : 0;
+        categorias[fila] = codificarCategoria(producto.getCategoria());
+        mascaras[fila] = producto.getMascaraDietetica();
+    }
+
+    private int codificarCategoria(String categoria) {
+        String clave = categoria != null ? categoria : "";
+        return codigoPorCategoria.computeIfAbsent(clave, c -> {
+            nombresCategoria.add(c);
+            return nombresCategoria.size() - 1;
+        });
+    }
+
+    private void reservar(int capacidad) {
+        productos = productos == null ? new Producto[capacidad] : Arrays.copyOf(productos, capacidad);
+        ids = ids == null ? new long[capacidad] : Arrays.copyOf(ids, capacidad);
+        precios = precios == null ? new double[capacidad] : Arrays.copyOf(precios, capacidad);
+        calorias = calorias == null ? new double[capacidad] : Arrays.copyOf(calorias, capacidad);
+        proteinas = proteinas == null ? new double[capacidad] : Arrays.copyOf(proteinas, capacidad);
+        carbohidratos = carbohidratos == null ? new double[capacidad] : Arrays.copyOf(carbohidratos, capacidad);
+        grasas = grasas == null ? new double[capacidad] : Arrays.copyOf(grasas, capacidad);
+        categorias = categorias == null ? new int[capacidad] : Arrays.copyOf(categorias, capacidad);
+        mascaras = mascaras == null ? new int[capacidad] : Arrays.copyOf(mascaras, capacidad);
+    }
+}
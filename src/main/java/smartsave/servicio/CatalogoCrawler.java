@@ -0,0 +1,290 @@
+package smartsave.servicio;
+
+import org.hibernate.Session;
+import smartsave.api.MercadonaApiServicio;
+import smartsave.config.EjecutoresConfig;
+import smartsave.config.HibernateConfig;
+import smartsave.modelo.Producto;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Recorre en segundo plano las categorías de Mercadona y vuelca sus productos
+ * a la tabla productos, para que la búsqueda y la lista optimizada trabajen
+ * con el catálogo completo desde H2 en lugar de con las 30 novedades.
+ *
+ * Los productos de Mercadona se guardan con su propio id, en la misma columna
+ * IDENTITY que los productos creados en local. Para que no se pisen, los ids que
+ * genera la BD empiezan en PRIMER_ID_LOCAL, muy por encima de los de Mercadona,
+ * y el volcado solo actualiza filas cuyo supermercado es Mercadona.
+ *
+ * Cada pasada procesa unas pocas categorías; al terminar un ciclo completo sin
+ * errores se marcan como no disponibles los productos de Mercadona que no han
+ * aparecido en él. El intervalo entre pasadas se cambia con
+ * -Dsmartsave.catalogo.intervaloSegundos (0 desactiva el recorrido).
+ */
+public class CatalogoCrawler {
+    private static final long INTERVALO_SEGUNDOS = Long.getLong("smartsave.catalogo.intervaloSegundos", 60);
+    private static final long ESPERA_INICIAL_SEGUNDOS = 30;
+    private static final int CATEGORIAS_POR_PASADA = 5;
+    private static final String SUPERMERCADO = "Mercadona";
+    static final long PRIMER_ID_LOCAL = 1_000_000_000L;
+
+    //el precio de la fila y el de la VALUES se comparan antes de actualizar para fechar los cambios;
+    //la informacion nutricional es la estimada por categoria en MercadonaAdapter
+    private static final String SQL_UPSERT =
+            "MERGE INTO productos p USING (VALUES (CAST(? AS BIGINT), CAST(? AS VARCHAR), CAST(? AS VARCHAR), " +
+            "CAST(? AS VARCHAR), CAST(? AS NUMERIC(10,2)), CAST(? AS TIMESTAMP), " +
+            "CAST(? AS NUMERIC(8,2)), CAST(? AS NUMERIC(8,2)), CAST(? AS NUMERIC(8,2)), CAST(? AS NUMERIC(8,2)), " +
+            "CAST(? AS NUMERIC(8,2)), CAST(? AS NUMERIC(8,2)), CAST(? AS NUMERIC(8,2)))) " +
+            "AS v(id, nombre, marca, categoria, precio, visto, calorias, proteinas, carbohidratos, grasas, fibra, sodio, azucares) " +
+            "ON p.id = v.id " +
+            "WHEN MATCHED AND p.supermercado = '" + SUPERMERCADO + "' THEN UPDATE SET nombre = v.nombre, marca = v.marca, categoria = v.categoria, precio = v.precio, " +
+            "calorias = v.calorias, proteinas = v.proteinas, carbohidratos = v.carbohidratos, grasas = v.grasas, " +
+            "fibra = v.fibra, sodio = v.sodio, azucares = v.azucares, " +
+            "disponible = TRUE, ultima_vez_visto = v.visto, " +
+            "ultimo_cambio_precio = CASE WHEN p.precio <> v.precio THEN v.visto ELSE p.ultimo_cambio_precio END " +
+            "WHEN NOT MATCHED THEN INSERT (id, nombre, marca, categoria, precio, supermercado, disponible, " +
+            "calorias, proteinas, carbohidratos, grasas, fibra, sodio, azucares, ultima_vez_visto, ultimo_cambio_precio) " +
+            "VALUES (v.id, v.nombre, v.marca, v.categoria, v.precio, '" + SUPERMERCADO + "', TRUE, " +
+            "v.calorias, v.proteinas, v.carbohidratos, v.grasas, v.fibra, v.sodio, v.azucares, v.visto, v.visto)";
+
+    private static final String SQL_MAXIMO_ID = "SELECT COALESCE(MAX(id), 0) FROM productos";
+
+    private static final String SQL_NO_VISTOS =
+            "UPDATE productos SET disponible = FALSE WHERE supermercado = ? AND disponible = TRUE AND ultima_vez_visto < ?";
+
+    private static CatalogoCrawler instancia;
+
+    /**
+     * Quien tiene en memoria una copia del catálogo que el MERGE no actualiza por
+     * sí solo (ProductoServicio con su CatalogoColumnar).
+     */
+    public interface Oyente {
+        void productosGuardados(List<Producto> productos);
+
+        /**
+         * Se han marcado productos como no disponibles directamente en la tabla.
+         */
+        void productosRetirados();
+    }
+
+    private final MercadonaApiServicio mercadonaApi;
+    private final Oyente oyente;
+    private final Deque<Long> categoriasPendientes = new ArrayDeque<>();
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+    private ScheduledFuture<?> tarea;
+
+    private LocalDateTime inicioCiclo;
+    private boolean cicloSinErrores;
+
+    private CatalogoCrawler(MercadonaApiServicio mercadonaApi, Oyente oyente) {
+        this.mercadonaApi = mercadonaApi;
+        this.oyente = oyente;
+    }
+
+    /**
+     * Arranca el recorrido periódico con el primer servicio que lo pida; las
+     * llamadas siguientes no hacen nada.
+     */
+    public static synchronized void iniciar(MercadonaApiServicio mercadonaApi, Oyente oyente) {
+        if (instancia != null || mercadonaApi == null || INTERVALO_SEGUNDOS <= 0) {
+            return;
+        }
+        CatalogoCrawler crawler = new CatalogoCrawler(mercadonaApi, oyente);
+        crawler.tarea = EjecutoresConfig.getPlanificador().scheduleWithFixedDelay(
+                () -> EjecutoresConfig.getEjecutorIO().execute(crawler::pasada),
+                ESPERA_INICIAL_SEGUNDOS, INTERVALO_SEGUNDOS, TimeUnit.SECONDS);
+        instancia = crawler;
+    }
+
+    public static synchronized void detener() {
+        if (instancia != null) {
+            instancia.tarea.cancel(false);
+            instancia = null;
+        }
+    }
+
+    private void pasada() {
+        //si la pasada anterior sigue en marcha (API lenta) esta se salta
+        if (!enCurso.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (!mercadonaApi.isCatalogoDisponible()) {
+                return;
+            }
+            if (categoriasPendientes.isEmpty() && !empezarCiclo()) {
+                return;
+            }
+
+            int productosGuardados = 0;
+            for (int i = 0; i < CATEGORIAS_POR_PASADA && !categoriasPendientes.isEmpty(); i++) {
+                Long categoriaId = categoriasPendientes.poll();
+                try {
+                    List<Producto> productos = mercadonaApi.obtenerProductosCategoria(categoriaId)
+                            .get(mercadonaApi.getTimeoutCatalogoMs(), TimeUnit.MILLISECONDS);
+                    //sin API o con el circuito abierto la llamada falla; una lista vacia es una categoria vacia de verdad
+                    productosGuardados += guardarProductos(productos);
+                } catch (Exception e) {
+                    cicloSinErrores = false;
+                    System.err.println("Error recorriendo la categoría " + categoriaId + " de Mercadona: " + e.getMessage());
+                }
+            }
+            System.out.println("Catálogo de Mercadona: " + productosGuardados + " productos actualizados, "
+                    + categoriasPendientes.size() + " categorías pendientes");
+
+            if (categoriasPendientes.isEmpty()) {
+                terminarCiclo();
+            }
+        } finally {
+            enCurso.set(false);
+        }
+    }
+
+    private boolean empezarCiclo() {
+        try {
+            List<Long> categorias = mercadonaApi.obtenerCategorias().get(mercadonaApi.getTimeoutCatalogoMs(), TimeUnit.MILLISECONDS);
+            if (categorias.isEmpty()) {
+                return false;
+            }
+            reservarIdsLocales();
+            categoriasPendientes.addAll(categorias);
+            inicioCiclo = LocalDateTime.now();
+            cicloSinErrores = true;
+            return true;
+        } catch (Exception e) {
+            System.err.println("Error obteniendo las categorías de Mercadona: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void reservarIdsLocales() {
+        try (Session session = HibernateConfig.getSessionFactory().openSession()) {
+            session.doWork(CatalogoCrawler::reservarIdsLocales);
+        } catch (Exception e) {
+            System.err.println("Error reservando los ids de los productos locales: " + e.getMessage());
+        }
+    }
+
+    private void terminarCiclo() {
+        if (!cicloSinErrores) {
+            return;
+        }
+        try (Session session = HibernateConfig.getSessionFactory().openSession()) {
+            int retirados = session.doReturningWork(conexion -> marcarNoVistos(conexion, inicioCiclo));
+            System.out.println("Catálogo de Mercadona recorrido completo, " + retirados + " productos ya no están a la venta");
+            if (retirados > 0) {
+                IndiceBusquedaProductos.getInstancia().invalidar();
+                oyente.productosRetirados();
+            }
+        } catch (Exception e) {
+            System.err.println("Error marcando productos retirados de Mercadona: " + e.getMessage());
+        }
+    }
+
+    private int guardarProductos(List<Producto> productos) {
+        if (productos.isEmpty()) {
+            return 0;
+        }
+        try (Session session = HibernateConfig.getSessionFactory().openSession()) {
+            List<Producto> guardados = session.doReturningWork(conexion -> guardarLote(conexion, productos, LocalDateTime.now()));
+            //el MERGE no pasa por guardarProducto, asi que el indice de busqueda y el catalogo por columnas se actualizan aqui
+            IndiceBusquedaProductos.getInstancia().actualizar(guardados);
+            oyente.productosGuardados(guardados);
+            return guardados.size();
+        } catch (Exception e) {
+            System.err.println("Error guardando productos del catálogo de Mercadona: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Lleva el siguiente id que genera la BD a PRIMER_ID_LOCAL o más, por encima
+     * de todas las filas. Los ids explícitos del volcado no hacen avanzar la
+     * columna IDENTITY, así que sin esto un producto nuevo podría recibir el id de
+     * uno de Mercadona ya guardado.
+     */
+    static void reservarIdsLocales(Connection conexion) throws SQLException {
+        try (Statement sentencia = conexion.createStatement()) {
+            long maximo;
+            try (ResultSet filas = sentencia.executeQuery(SQL_MAXIMO_ID)) {
+                filas.next();
+                maximo = filas.getLong(1);
+            }
+            long siguiente = Math.max(PRIMER_ID_LOCAL, maximo + 1);
+            sentencia.execute("ALTER TABLE productos ALTER COLUMN id RESTART WITH " + siguiente);
+            if (!conexion.getAutoCommit()) conexion.commit();
+        }
+    }
+
+    /**
+     * Inserta o actualiza los productos en un solo lote JDBC y en una transacción.
+     * Los ids que ya usa un producto local no se tocan.
+     * @return los productos escritos, sin los que chocan con un producto local
+     */
+    static List<Producto> guardarLote(Connection conexion, List<Producto> productos, LocalDateTime visto) throws SQLException {
+        boolean autoCommit = conexion.getAutoCommit();
+        conexion.setAutoCommit(false);
+        try (PreparedStatement sentencia = conexion.prepareStatement(SQL_UPSERT)) {
+            List<Producto> enLote = new ArrayList<>();
+            for (Producto producto : productos) {
+                if (producto == null || producto.getId() == null || producto.getId() >= PRIMER_ID_LOCAL) continue;
+                sentencia.setLong(1, producto.getId());
+                sentencia.setString(2, producto.getNombre());
+                sentencia.setString(3, producto.getMarca());
+                sentencia.setString(4, producto.getCategoria());
+                sentencia.setBigDecimal(5, producto.getPrecioBD());
+                sentencia.setTimestamp(6, Timestamp.valueOf(visto));
+                Producto.NutricionProducto info = producto.getInfoNutricional();
+                if (info == null) info = new Producto.NutricionProducto();
+                sentencia.setBigDecimal(7, info.getCaloriasBD());
+                sentencia.setBigDecimal(8, info.getProteinasBD());
+                sentencia.setBigDecimal(9, info.getCarbohidratosBD());
+                sentencia.setBigDecimal(10, info.getGrasasBD());
+                sentencia.setBigDecimal(11, info.getFibraBD());
+                sentencia.setBigDecimal(12, info.getSodioBD());
+                sentencia.setBigDecimal(13, info.getAzucaresBD());
+                sentencia.addBatch();
+                enLote.add(producto);
+            }
+            if (enLote.isEmpty()) return enLote;
+            int[] filas = sentencia.executeBatch();
+            conexion.commit();
+
+            List<Producto> escritos = new ArrayList<>(enLote.size());
+            for (int i = 0; i < filas.length; i++) {
+                if (filas[i] > 0 || filas[i] == Statement.SUCCESS_NO_INFO) escritos.add(enLote.get(i));
+            }
+            return escritos;
+        } catch (SQLException e) {
+            conexion.rollback();
+            throw e;
+        } finally {
+            conexion.setAutoCommit(autoCommit);
+        }
+    }
+
+    static int marcarNoVistos(Connection conexion, LocalDateTime inicioCiclo) throws SQLException {
+        try (PreparedStatement sentencia = conexion.prepareStatement(SQL_NO_VISTOS)) {
+            sentencia.setString(1, SUPERMERCADO);
+            sentencia.setTimestamp(2, Timestamp.valueOf(inicioCiclo));
+            int actualizados = sentencia.executeUpdate();
+            if (!conexion.getAutoCommit()) conexion.commit();
+            return actualizados;
+        }
+    }
+}
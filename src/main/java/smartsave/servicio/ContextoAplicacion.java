@@ -0,0 +1,47 @@
+package smartsave.servicio;
+
+/**
+ * Servicios compartidos por todas las pantallas. ProductoServicio es caro de
+ * crear (cliente de Mercadona, caches, recorrido del catálogo) y sus caches solo
+ * sirven si todas las pantallas usan la misma instancia, así que se crea una vez,
+ * la primera vez que se pide, y se cierra en SmartSaveApp.stop().
+ */
+public class ContextoAplicacion {
+
+    private static ContextoAplicacion instancia;
+
+    private ProductoServicio productoServicio;
+    private ListaCompraServicio listaCompraServicio;
+
+    private ContextoAplicacion() {
+    }
+
+    public static synchronized ContextoAplicacion getInstancia() {
+        if (instancia == null) {
+            instancia = new ContextoAplicacion();
+        }
+        return instancia;
+    }
+
+    public synchronized ProductoServicio getProductoServicio() {
+        if (productoServicio == null) {
+            productoServicio = new ProductoServicio();
+        }
+        return productoServicio;
+    }
+
+    public synchronized ListaCompraServicio getListaCompraServicio() {
+        if (listaCompraServicio == null) {
+            listaCompraServicio = new ListaCompraServicio();
+        }
+        return listaCompraServicio;
+    }
+
+    public synchronized void cerrar() {
+        if (productoServicio != null) {
+            productoServicio.cerrar();
+            productoServicio = null;
+        }
+        listaCompraServicio = null;
+    }
+}
@@ -0,0 +1,322 @@
+package smartsave.servicio;
+
+import org.hibernate.Session;
+import smartsave.config.HibernateConfig;
+import smartsave.modelo.Producto;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido en memoria sobre nombre, marca y categoría de los productos
+ * disponibles, para no recorrer la tabla con LOWER(...) LIKE '%termino%'.
+ *
+ * Los textos se pliegan (minúsculas y sin tildes, "Lácteos" = "lacteos") y se
+ * parten en palabras. Cada palabra de la consulta tiene que aparecer en el
+ * producto: las de una o dos letras como prefijo de alguna palabra (mediante un
+ * TreeMap ordenado) y las más largas en cualquier posición, usando los trigramas
+ * para quedarse con los candidatos antes de comprobarlo. Se carga de BD la
+ * primera vez que se usa y después se mantiene con actualizar() y eliminar().
+ */
+public class IndiceBusquedaProductos {
+    private static final Pattern MARCAS_DIACRITICAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int N_GRAMA = 3;
+
+    private static IndiceBusquedaProductos instancia;
+
+    private final Supplier<List<Producto>> cargador;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean cargado;
+
+    private final Map<Long, Entrada> entradas = new HashMap<>();
+    private final NavigableMap<String, Set<Long>> palabras = new TreeMap<>();
+    private final Map<String, Set<Long>> trigramas = new HashMap<>();
+
+    /**
+     * Producto indexado con sus palabras ya plegadas, para poder quitarlo del índice al cambiar.
+     */
+    private record Entrada(Producto producto, Set<String> palabras) {}
+
+    private record Acierto(Producto producto, int prefijos) {}
+
+    public static synchronized IndiceBusquedaProductos getInstancia() {
+        if (instancia == null) {
+            instancia = new IndiceBusquedaProductos(IndiceBusquedaProductos::cargarDesdeBD);
+        }
+        return instancia;
+    }
+
+    IndiceBusquedaProductos(Supplier<List<Producto>> cargador) {
+        this.cargador = cargador;
+    }
+
+    private static List<Producto> cargarDesdeBD() {
+        try (Session session = HibernateConfig.getSessionFactory().openSession()) {
+            return session.createQuery("FROM Producto p WHERE p.disponible = true", Producto.class).getResultList();
+        } catch (Exception e) {
+            System.err.println("Error cargando el índice de búsqueda de productos: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Pasa el texto a minúsculas sin tildes ni diéresis.
+     */
+    static String plegar(String texto) {
+        if (texto == null) return "";
+        String descompuesto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        return MARCAS_DIACRITICAS.matcher(descompuesto).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    static Set<String> palabras(String texto) {
+        Set<String> resultado = new HashSet<>();
+        for (String palabra : SEPARADORES.split(plegar(texto))) {
+            if (!palabra.isEmpty()) resultado.add(palabra);
+        }
+        return resultado;
+    }
+
+    /**
+     * Productos que contienen todas las palabras de la consulta, primero los que
+     * las tienen como comienzo de palabra y después por nombre.
+     * @param limite número máximo de productos devueltos
+     */
+    public List<Producto> buscar(String consulta, int limite) {
+        List<String> terminos = new ArrayList<>(palabras(consulta));
+        if (terminos.isEmpty() || limite <= 0) return new ArrayList<>();
+        asegurarCargado();
+
+        lock.readLock().lock();
+        try {
+            //primero los terminos mas largos, que suelen tener menos candidatos y dejan pequena la interseccion
+            Set<Long> coincidencias = null;
+            terminos.sort(Comparator.comparingInt(String::length).reversed());
+            for (String termino : terminos) {
+                Set<Long> candidatos = candidatos(termino, coincidencias);
+                coincidencias = candidatos;
+                if (coincidencias.isEmpty()) return new ArrayList<>();
+            }
+
+            List<Acierto> aciertos = new ArrayList<>(coincidencias.size());
+            for (Long id : coincidencias) {
+                Entrada entrada = entradas.get(id);
+                aciertos.add(new Acierto(entrada.producto(), prefijosCoincidentes(entrada, terminos)));
+            }
+            aciertos.sort(Comparator.comparingInt((Acierto a) -> -a.prefijos())
+                    .thenComparing(a -> a.producto().getNombre(), Comparator.nullsLast(String::compareTo)));
+
+            List<Producto> resultado = new ArrayList<>(Math.min(limite, aciertos.size()));
+            for (Acierto acierto : aciertos) {
+                if (resultado.size() == limite) break;
+                resultado.add(acierto.producto());
+            }
+            return resultado;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids de los productos que contienen el término, restringidos a 'dentro' si no es null.
+     */
+    private Set<Long> candidatos(String termino, Set<Long> dentro) {
+        Set<Long> resultado = new HashSet<>();
+        if (termino.length() < N_GRAMA) {
+            for (Set<Long> ids : palabras.subMap(termino, true, termino + Character.MAX_VALUE, false).values()) {
+                for (Long id : ids) {
+                    if (dentro == null || dentro.contains(id)) resultado.add(id);
+                }
+            }
+            return resultado;
+        }
+
+        //los trigramas solo descartan: "lech" y "ech" comparten "ech" pero hay que comprobar la palabra entera
+        Set<Long> porTrigramas = dentro;
+        for (String trigrama : trigramas(termino)) {
+            Set<Long> ids = trigramas.getOrDefault(trigrama, Set.of());
+            porTrigramas = porTrigramas == null ? ids : interseccion(porTrigramas, ids);
+            if (porTrigramas.isEmpty()) return resultado;
+        }
+        for (Long id : porTrigramas) {
+            Entrada entrada = entradas.get(id);
+            if (entrada != null && contiene(entrada, termino)) {
+                resultado.add(id);
+            }
+        }
+        return resultado;
+    }
+
+    private static Set<Long> interseccion(Set<Long> a, Set<Long> b) {
+        Set<Long> pequeno = a.size() <= b.size() ? a : b;
+        Set<Long> grande = pequeno == a ? b : a;
+        Set<Long> interseccion = new HashSet<>();
+        for (Long id : pequeno) {
+            if (grande.contains(id)) interseccion.add(id);
+        }
+        return interseccion;
+    }
+
+    private static boolean contiene(Entrada entrada, String termino) {
+        for (String palabra : entrada.palabras()) {
+            if (palabra.contains(termino)) return true;
+        }
+        return false;
+    }
+
+    private static int prefijosCoincidentes(Entrada entrada, List<String> terminos) {
+        int coincidentes = 0;
+        for (String termino : terminos) {
+            for (String palabra : entrada.palabras()) {
+                if (palabra.startsWith(termino)) {
+                    coincidentes++;
+                    break;
+                }
+            }
+        }
+        return coincidentes;
+    }
+
+    private static Set<String> trigramas(String palabra) {
+        Set<String> resultado = new HashSet<>();
+        for (int i = 0; i + N_GRAMA <= palabra.length(); i++) {
+            resultado.add(palabra.substring(i, i + N_GRAMA));
+        }
+        return resultado;
+    }
+
+    /**
+     * Añade o vuelve a indexar el producto; si ya no está disponible lo quita.
+     */
+    public void actualizar(Producto producto) {
+        if (producto == null || producto.getId() == null) return;
+        lock.writeLock().lock();
+        try {
+            quitar(producto.getId());
+            if (producto.isDisponible()) indexar(producto);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void actualizar(Collection<Producto> productos) {
+        lock.writeLock().lock();
+        try {
+            for (Producto producto : productos) {
+                if (producto == null || producto.getId() == null) continue;
+                quitar(producto.getId());
+                if (producto.isDisponible()) indexar(producto);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void eliminar(Long id) {
+        lock.writeLock().lock();
+        try {
+            quitar(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Descarta el índice; se vuelve a cargar de BD en la siguiente búsqueda.
+     * Para cambios hechos directamente en la tabla (productos retirados del catálogo).
+     */
+    public void invalidar() {
+        lock.writeLock().lock();
+        try {
+            vaciar();
+            cargado = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int getTamano() {
+        lock.readLock().lock();
+        try {
+            return entradas.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void asegurarCargado() {
+        lock.readLock().lock();
+        try {
+            if (cargado) return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        //la consulta se hace fuera del cerrojo; lo indexado mientras tanto con actualizar() tiene preferencia
+        List<Producto> productos = cargador.get();
+        lock.writeLock().lock();
+        try {
+            if (cargado) return;
+            for (Producto producto : productos) {
+                if (producto.getId() != null && producto.isDisponible() && !entradas.containsKey(producto.getId())) {
+                    indexar(producto);
+                }
+            }
+            cargado = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexar(Producto producto) {
+        Long id = producto.getId();
+        Set<String> palabrasProducto = new HashSet<>();
+        palabrasProducto.addAll(palabras(producto.getNombre()));
+        palabrasProducto.addAll(palabras(producto.getMarca()));
+        palabrasProducto.addAll(palabras(producto.getCategoria()));
+        entradas.put(id, new Entrada(producto, palabrasProducto));
+
+        for (String palabra : palabrasProducto) {
+            palabras.computeIfAbsent(palabra, p -> new HashSet<>()).add(id);
+            for (String trigrama : trigramas(palabra)) {
+                trigramas.computeIfAbsent(trigrama, t -> new HashSet<>()).add(id);
+            }
+        }
+    }
+
+    private void quitar(Long id) {
+        Entrada entrada = entradas.remove(id);
+        if (entrada == null) return;
+        for (String palabra : entrada.palabras()) {
+            quitarDe(palabras, palabra, id);
+            for (String trigrama : trigramas(palabra)) {
+                quitarDe(trigramas, trigrama, id);
+            }
+        }
+    }
+
+    private static void quitarDe(Map<String, Set<Long>> mapa, String clave, Long id) {
+        Set<Long> ids = mapa.get(clave);
+        if (ids == null) return;
+        ids.remove(id);
+        if (ids.isEmpty()) mapa.remove(clave);
+    }
+
+    private void vaciar() {
+        entradas.clear();
+        palabras.clear();
+        trigramas.clear();
+    }
+}
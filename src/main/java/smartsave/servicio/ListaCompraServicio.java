@@ -3,13 +3,15 @@ package smartsave.servicio;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.hibernate.query.Query;
+import smartsave.api.MercadonaApiServicio;
 import smartsave.config.HibernateConfig;
 import smartsave.modelo.*;
+import smartsave.utilidad.SeleccionUtil;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -19,13 +21,14 @@ public class ListaCompraServicio {
     private PerfilNutricionalServicio perfilServicio;
     private UsuarioServicio usuarioServicio;
 
-    private final Map<Long, ListaCompra> cacheListas = new HashMap<>();
+    //la instancia se comparte entre pantallas (ContextoAplicacion) y se usa tambien desde tareas asincronas
+    private final Map<Long, ListaCompra> cacheListas = new ConcurrentHashMap<>();
     private long ultimaLimpiezaCache = System.currentTimeMillis();
     private static final long TIEMPO_EXPIRACION_CACHE = TimeUnit.MINUTES.toMillis(5);
 
     private ProductoServicio getProductoServicio() {
         if (productoServicio == null) {
-            productoServicio = new ProductoServicio();
+            productoServicio = ContextoAplicacion.getInstancia().getProductoServicio();
         }
         return productoServicio;
     }
@@ -292,15 +295,9 @@ public class ListaCompraServicio {
                 return null;
             }
 
-            CompletableFuture<List<Producto>> futureProductos = productoServicio.getMercadonaApiServicio()
-                    .obtenerProductosNuevos();
-
-            List<Producto> productos = futureProductos.get(10, TimeUnit.SECONDS);
-
-            return productos.stream()
-                    .filter(p -> p.getId() != null && p.getId().equals(productoId))
-                    .findFirst()
-                    .orElse(null);
+            MercadonaApiServicio mercadonaApi = productoServicio.getMercadonaApiServicio();
+            return mercadonaApi.obtenerDetalleProducto(productoId)
+                    .get(mercadonaApi.getTimeoutMs(), TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             System.err.println("Error buscando producto de Mercadona: " + e.getMessage());
             return null;
@@ -476,10 +473,14 @@ public class ListaCompraServicio {
             double factorPresupuesto = getUsuarioServicio().obtenerFactorPresupuestoUsuario(usuarioId);
             double presupuestoAjustado = lista.getPresupuestoMaximoAsDouble() * factorPresupuesto;
 
-            List<Producto> productosCompatibles = productoServicio.buscarProductosCompatibles(perfil.getRestricciones());
-
-            Map<String, List<Producto>> productosPorCategoria = productosCompatibles.stream()
-                    .collect(Collectors.groupingBy(Producto::getCategoria));
+            //los recorridos trabajan sobre las columnas del catalogo: precios y macros ya son double
+            CatalogoColumnar.Instantanea catalogo = productoServicio.obtenerCatalogoColumnar();
+            int[] compatibles = catalogo.filasCompatibles(RestriccionesDieteticas.compilar(perfil.getRestricciones()));
+            double[] precios = catalogo.precios();
+            double[] proteinas = catalogo.proteinas();
+            double[] carbohidratos = catalogo.carbohidratos();
+            double[] grasas = catalogo.grasas();
+            double[] calorias = catalogo.calorias();
 
             double proteinasObjetivo = macros.getProteinas() * 7;
             double carbohidratosObjetivo = macros.getCarbohidratos() * 7;
@@ -501,61 +502,68 @@ public class ListaCompraServicio {
             int prioridadPrecio = modalidadObj != null ? modalidadObj.getPrioridadPrecio() : 6;
             int prioridadNutricion = modalidadObj != null ? modalidadObj.getPrioridadNutricion() : 7;
 
-            for (String categoria : categoriasEsenciales) {
-                List<Producto> productosCategoria = productosPorCategoria.getOrDefault(categoria, new ArrayList<>());
+            //la lista se acaba de crear: lo que tiene es lo que se le anade aqui, sin preguntar a BD por cada producto
+            Set<Long> enLista = new HashSet<>();
 
-                if (productosCategoria.isEmpty()) {
+            for (String categoria : categoriasEsenciales) {
+                int codigoCategoria = catalogo.codigoCategoria(categoria);
+                if (codigoCategoria < 0) {
                     continue;
                 }
 
-                if (prioridadPrecio > prioridadNutricion) {
-                    productosCategoria.sort(Comparator.comparing(Producto::getPrecio));
-                } else if (prioridadPrecio < prioridadNutricion) {
-                    productosCategoria.sort(Comparator.comparing(obj -> {
-                        Producto p = (Producto) obj;
-                        return p.getInfoNutricional().getProteinas() +
-                                p.getInfoNutricional().getCarbohidratos() / 2 +
-                                p.getInfoNutricional().getGrasas() / 3;
-                    }).reversed());
-                } else {
-                    productosCategoria.sort(Comparator.comparing(Producto::getRelacionProteinaPrecio).reversed());
+                //solo interesa el mejor de cada categoria: una pasada en vez de ordenarla entera
+                int mejor = -1;
+                double claveMejor = 0;
+                for (int fila : compatibles) {
+                    if (catalogo.categorias()[fila] != codigoCategoria) continue;
+                    double clave;
+                    if (prioridadPrecio > prioridadNutricion) {
+                        clave = -precios[fila];
+                    } else if (prioridadPrecio < prioridadNutricion) {
+                        clave = proteinas[fila] + carbohidratos[fila] / 2 + grasas[fila] / 3;
+                    } else {
+                        clave = relacionProteinaPrecio(proteinas[fila], precios[fila]);
+                    }
+                    if (mejor < 0 || Double.compare(clave, claveMejor) > 0) {
+                        mejor = fila;
+                        claveMejor = clave;
+                    }
                 }
 
-                if (!productosCategoria.isEmpty()) {
-                    Producto producto = productosCategoria.get(0);
-
+                if (mejor >= 0) {
+                    Producto producto = catalogo.productos()[mejor];
                     int cantidad = determinarCantidadPorCategoria(categoria);
 
-                    if (costoActual + (producto.getPrecio() * cantidad) <= presupuestoAjustado) {
+                    if (costoActual + (precios[mejor] * cantidad) <= presupuestoAjustado) {
                         agregarProductoALista(lista, producto.getId(), producto, cantidad);
+                        enLista.add(producto.getId());
 
-                        proteinasActuales += producto.getInfoNutricional().getProteinas() * cantidad;
-                        carbohidratosActuales += producto.getInfoNutricional().getCarbohidratos() * cantidad;
-                        grasasActuales += producto.getInfoNutricional().getGrasas() * cantidad;
-                        caloriasActuales += producto.getInfoNutricional().getCalorias() * cantidad;
-                        costoActual += producto.getPrecio() * cantidad;
+                        proteinasActuales += proteinas[mejor] * cantidad;
+                        carbohidratosActuales += carbohidratos[mejor] * cantidad;
+                        grasasActuales += grasas[mejor] * cantidad;
+                        caloriasActuales += calorias[mejor] * cantidad;
+                        costoActual += precios[mejor] * cantidad;
                     }
                 }
             }
 
-            List<Producto> todosProductos = new ArrayList<>(productosCompatibles);
-
-            if (prioridadPrecio > prioridadNutricion) {
-                todosProductos.sort(Comparator.comparing(p -> p.getPrecio() / (p.getInfoNutricional().getProteinas() + 1)));
-            } else if (prioridadPrecio < prioridadNutricion) {
-                todosProductos.sort(Comparator.comparing(obj -> {
-                    Producto p = (Producto) obj;
-                    return (p.getInfoNutricional().getProteinas() * 4) +
-                            (p.getInfoNutricional().getCarbohidratos() * 2) +
-                            (p.getInfoNutricional().getGrasas() * 3);
-                }).reversed());
-            } else {
-                todosProductos.sort(Comparator.comparing(Producto::getRelacionProteinaPrecio).reversed());
+            //clave de orden de cada producto compatible, calculada una vez; las de "mayor es mejor" van negadas
+            double[] claves = new double[compatibles.length];
+            for (int i = 0; i < compatibles.length; i++) {
+                int fila = compatibles[i];
+                if (prioridadPrecio > prioridadNutricion) {
+                    claves[i] = precios[fila] / (proteinas[fila] + 1);
+                } else if (prioridadPrecio < prioridadNutricion) {
+                    claves[i] = -((proteinas[fila] * 4) + (carbohidratos[fila] * 2) + (grasas[fila] * 3));
+                } else {
+                    claves[i] = -relacionProteinaPrecio(proteinas[fila], precios[fila]);
+                }
             }
 
-            for (Producto producto : todosProductos) {
-                ItemCompra itemExistente = productoYaEnLista(lista.getId(), producto.getId());
-                if (itemExistente != null) {
+            for (int posicion : SeleccionUtil.ordenarPorClave(claves)) {
+                int fila = compatibles[posicion];
+                Producto producto = catalogo.productos()[fila];
+                if (enLista.contains(producto.getId())) {
                     continue;
                 }
 
@@ -563,25 +571,26 @@ public class ListaCompraServicio {
                 double deficitCarbohidratos = Math.max(0, carbohidratosObjetivo - carbohidratosActuales) / carbohidratosObjetivo;
                 double deficitGrasas = Math.max(0, grasasObjetivo - grasasActuales) / grasasObjetivo;
 
-                double proteinasProducto = producto.getInfoNutricional().getProteinas();
-                double carbohidratosProducto = producto.getInfoNutricional().getCarbohidratos();
-                double grasasProducto = producto.getInfoNutricional().getGrasas();
+                double proteinasProducto = proteinas[fila];
+                double carbohidratosProducto = carbohidratos[fila];
+                double grasasProducto = grasas[fila];
 
                 boolean esRelevanteParaDeficit =
                         (deficitProteinas > 0.1 && proteinasProducto > 5) ||
                                 (deficitCarbohidratos > 0.1 && carbohidratosProducto > 10) ||
                                 (deficitGrasas > 0.1 && grasasProducto > 3);
 
-                if (esRelevanteParaDeficit && costoActual + producto.getPrecio() <= presupuestoAjustado) {
+                if (esRelevanteParaDeficit && costoActual + precios[fila] <= presupuestoAjustado) {
                     int cantidad = 1;
 
                     agregarProductoALista(lista, producto.getId(), producto, cantidad);
+                    enLista.add(producto.getId());
 
                     proteinasActuales += proteinasProducto * cantidad;
                     carbohidratosActuales += carbohidratosProducto * cantidad;
                     grasasActuales += grasasProducto * cantidad;
-                    caloriasActuales += producto.getInfoNutricional().getCalorias() * cantidad;
-                    costoActual += producto.getPrecio() * cantidad;
+                    caloriasActuales += calorias[fila] * cantidad;
+                    costoActual += precios[fila] * cantidad;
 
                     if (proteinasActuales >= proteinasObjetivo * 0.9 &&
                             carbohidratosActuales >= carbohidratosObjetivo * 0.9 &&
@@ -598,17 +607,9 @@ public class ListaCompraServicio {
         return obtenerListaCompra(lista.getId(), lista.getUsuarioId());
     }
 
-    private ItemCompra productoYaEnLista(Long listaId, Long productoId) {
-        try (Session session = HibernateConfig.getSessionFactory().openSession()) {
-            return session.createQuery(
-                            "FROM ItemCompra i WHERE i.lista.id = :listaId AND i.producto.id = :productoId",
-                            ItemCompra.class)
-                    .setParameter("listaId", listaId)
-                    .setParameter("productoId", productoId)
-                    .uniqueResult();
-        } catch (Exception e) {
-            return null;
-        }
+    //igual que Producto.getRelacionProteinaPrecio, sobre las columnas
+    private static double relacionProteinaPrecio(double proteinas, double precio) {
+        return precio <= 0 ? 0 : proteinas / precio;
     }
 
     private int determinarCantidadPorCategoria(String categoria) {
@@ -644,9 +645,7 @@ public class ListaCompraServicio {
                 List<Producto> productosCategoria = productoServicio.buscarPorCategoria(categoria);
 
                 if (!productosCategoria.isEmpty()) {
-                    productosCategoria.sort(Comparator.comparing(Producto::getPrecio));
-
-                    Producto producto = productosCategoria.get(0);
+                    Producto producto = SeleccionUtil.minimo(productosCategoria, Producto::getPrecio);
                     int cantidad = determinarCantidadPorCategoria(categoria);
 
                     if (presupuestoRestante >= producto.getPrecio() * cantidad) {
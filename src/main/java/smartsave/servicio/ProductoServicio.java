@@ -1,5 +1,8 @@
 package smartsave.servicio;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.hibernate.query.Query;
@@ -7,7 +10,9 @@ import smartsave.api.MercadonaAdapter;
 import smartsave.config.HibernateConfig;
 import smartsave.modelo.Producto;
 import smartsave.modelo.ModalidadAhorro;
+import smartsave.modelo.RestriccionesDieteticas;
 import smartsave.api.MercadonaApiServicio;
+import smartsave.utilidad.SeleccionUtil;
 
 import java.math.BigDecimal;
 import java.util.*;
@@ -22,9 +27,27 @@ public class ProductoServicio {
     private MercadonaApiServicio mercadonaApi;
     private boolean usarApiMercadona = true;
 
-    private final Map<Long, Producto> cacheProductos = new HashMap<>();
-    private final Map<String, List<Producto>> cacheBusquedas = new HashMap<>();
-    private long ultimaLimpiezaCache = System.currentTimeMillis();
+    //se leen y escriben desde el hilo de JavaFX y desde las tareas asincronas: caches concurrentes y acotadas
+    private static final long MAXIMO_PRODUCTOS_CACHE = 5000;
+    private static final long MAXIMO_BUSQUEDAS_CACHE = 100;
+    private static final long EXPIRACION_CACHE_MINUTOS = 10;
+    private static final String CLAVE_TODOS_PRODUCTOS = "todos_productos";
+
+    private final Cache<Long, Producto> cacheProductos = Caffeine.newBuilder()
+            .maximumSize(MAXIMO_PRODUCTOS_CACHE)
+            .expireAfterWrite(EXPIRACION_CACHE_MINUTOS, TimeUnit.MINUTES)
+            .build();
+    //cada entrada caduca por su cuenta y guardarProducto las invalida, porque el listado ya no refleja la BD;
+    //guarda futuros para que la carga no se haga dentro del compute de Caffeine y la invalidacion no la espere
+    private final AsyncCache<String, List<Producto>> cacheBusquedas = Caffeine.newBuilder()
+            .maximumSize(MAXIMO_BUSQUEDAS_CACHE)
+            .expireAfterWrite(EXPIRACION_CACHE_MINUTOS, TimeUnit.MINUTES)
+            .buildAsync();
+    private final IndiceBusquedaProductos indiceBusqueda = IndiceBusquedaProductos.getInstancia();
+
+    //columnas del catalogo para los recorridos completos; guardarProducto y el crawler actualizan sus filas y se reconstruye al caducar
+    private volatile CatalogoColumnar catalogoColumnar;
+    private volatile long catalogoColumnarDesdeMs;
 
     public ProductoServicio() {
         this("14010"); //Codigo del mercadona de Salesianos
@@ -32,14 +55,11 @@ public class ProductoServicio {
 
     public ProductoServicio(String codigoPostal) {
         try {
+            //el microservicio arranca en segundo plano, las consultas esperan a que este listo o tiran de BD
             this.mercadonaApi = new MercadonaApiServicio(codigoPostal);
-            this.usarApiMercadona = mercadonaApi.isApiDisponible();
-
-            if (usarApiMercadona) {
-                System.out.println("API de Mercadona disponible. Usando datos reales.");
-            } else {
-                System.out.println("API de Mercadona no disponible. Usando datos de BD.");
-            }
+            this.usarApiMercadona = true;
+            //el catalogo completo se va volcando a BD en segundo plano
+            CatalogoCrawler.iniciar(mercadonaApi, new OyenteCatalogo());
         } catch (Exception e) {
             System.err.println("Error inicializando API de Mercadona: " + e.getMessage());
             this.usarApiMercadona = false;
@@ -51,8 +71,9 @@ public class ProductoServicio {
     }
 
     public Producto buscarYGuardarProductoMercadona(Long productoId) {
-        if (cacheProductos.containsKey(productoId)) {
-            return cacheProductos.get(productoId);
+        Producto enCache = cacheProductos.getIfPresent(productoId);
+        if (enCache != null) {
+            return enCache;
         }
 
         Producto productoExistente = obtenerProductoPorId(productoId);
@@ -66,26 +87,13 @@ public class ProductoServicio {
         }
 
         try {
-            List<Producto> productosMercadona = new ArrayList<>();
-
-            CompletableFuture<List<Producto>> futureProductos = mercadonaApi.obtenerProductosNuevos();
-
-            CompletableFuture<List<Producto>> futureLeche = mercadonaApi.buscarProductos("leche");
-            CompletableFuture<List<Producto>> futurePan = mercadonaApi.buscarProductos("pan");
-
+            Producto productoEncontrado = null;
             try {
-                productosMercadona.addAll(futureProductos.get(5, TimeUnit.SECONDS));
-                productosMercadona.addAll(futureLeche.get(5, TimeUnit.SECONDS));
-                productosMercadona.addAll(futurePan.get(5, TimeUnit.SECONDS));
+                productoEncontrado = mercadonaApi.obtenerDetalleProducto(productoId).get(mercadonaApi.getTimeoutMs(), TimeUnit.MILLISECONDS);
             } catch (TimeoutException e) {
                 System.err.println("Timeout esperando respuesta de Mercadona API");
             }
 
-            Producto productoEncontrado = productosMercadona.stream()
-                    .filter(p -> p.getId() != null && p.getId().equals(productoId))
-                    .findFirst()
-                    .orElse(null);
-
             if (productoEncontrado != null) {
                 Producto guardado = guardarProducto(productoEncontrado);
                 cacheProductos.put(productoId, guardado);
@@ -100,14 +108,27 @@ public class ProductoServicio {
     }
 
     public List<Producto> obtenerTodosProductos() {
-        String cacheKey = "todos_productos";
-        if (cacheBusquedas.containsKey(cacheKey)) {
-            limpiarCacheSiNecesario();
-            return new ArrayList<>(cacheBusquedas.get(cacheKey));
+        //si varios hilos lo piden a la vez, solo uno consulta BD y Mercadona, en su propio hilo, y los demas esperan su resultado
+        CompletableFuture<List<Producto>> nueva = new CompletableFuture<>();
+        CompletableFuture<List<Producto>> carga = cacheBusquedas.asMap().putIfAbsent(CLAVE_TODOS_PRODUCTOS, nueva);
+        if (carga == null) {
+            carga = nueva;
+            try {
+                nueva.complete(cargarTodosProductos());
+            } catch (RuntimeException e) {
+                //un futuro fallido sale solo de la cache y el siguiente llamante vuelve a cargar
+                nueva.completeExceptionally(e);
+            }
         }
+        return new ArrayList<>(carga.join());
+    }
 
+    private List<Producto> cargarTodosProductos() {
         List<Producto> todosProductos = new ArrayList<>();
 
+        //la peticion a Mercadona se lanza antes de la consulta a BD para que ambas se solapen
+        CompletableFuture<List<Producto>> futureProductos = usarApiMercadona ? mercadonaApi.obtenerProductosNuevos() : null;
+
         try (Session session = HibernateConfig.getSessionFactory().openSession()) {
             Query<Producto> query = session.createQuery(
                     "FROM Producto p WHERE p.disponible = true",
@@ -117,10 +138,9 @@ public class ProductoServicio {
             System.err.println("Error obteniendo productos de BD: " + e.getMessage());
         }
 
-        if (usarApiMercadona) {
+        if (futureProductos != null) {
             try {
-                CompletableFuture<List<Producto>> futureProductos = mercadonaApi.obtenerProductosNuevos();
-                List<Producto> productosMercadona = futureProductos.get(10, TimeUnit.SECONDS);
+                List<Producto> productosMercadona = futureProductos.get(mercadonaApi.getTimeoutMs(), TimeUnit.MILLISECONDS);
 
                 Set<Long> idsExistentes = todosProductos.stream()
                         .map(Producto::getId)
@@ -138,9 +158,40 @@ public class ProductoServicio {
             }
         }
 
-        cacheBusquedas.put(cacheKey, new ArrayList<>(todosProductos));
+        return List.copyOf(todosProductos);
+    }
 
-        return todosProductos;
+    /**
+     * Búsqueda solo en el catálogo local, sin esperar a Mercadona ni aplicar la
+     * modalidad. Pensada para ir mostrando resultados mientras el usuario escribe.
+     */
+    public List<Producto> buscarProductosLocales(String termino, int limite) {
+        if (termino == null || termino.trim().isEmpty()) {
+            return new ArrayList<>();
+        }
+        return indiceBusqueda.buscar(termino, limite);
+    }
+
+    /**
+     * Instantánea por columnas de los productos de obtenerTodosProductos(). Se
+     * construye la primera vez y, como la cache de ese listado, caduca a los
+     * EXPIRACION_CACHE_MINUTOS; entre medias los cambios de guardarProducto y los
+     * lotes de CatalogoCrawler se aplican fila a fila.
+     */
+    public CatalogoColumnar.Instantanea obtenerCatalogoColumnar() {
+        CatalogoColumnar actual = catalogoColumnar;
+        long caducidadMs = TimeUnit.MINUTES.toMillis(EXPIRACION_CACHE_MINUTOS);
+        if (actual == null || System.currentTimeMillis() - catalogoColumnarDesdeMs > caducidadMs) {
+            synchronized (this) {
+                actual = catalogoColumnar;
+                if (actual == null || System.currentTimeMillis() - catalogoColumnarDesdeMs > caducidadMs) {
+                    actual = new CatalogoColumnar(obtenerTodosProductos());
+                    catalogoColumnar = actual;
+                    catalogoColumnarDesdeMs = System.currentTimeMillis();
+                }
+            }
+        }
+        return actual.instantanea();
     }
 
     public List<Producto> buscarProductos(String termino, ModalidadAhorro modalidad) {
@@ -149,20 +200,12 @@ public class ProductoServicio {
         }
         String terminoNormalizado = termino.toLowerCase().trim();
         List<Producto> resultados = new ArrayList<>();
-        try (Session session = HibernateConfig.getSessionFactory().openSession()) {
-            Query<Producto> query = session.createQuery(
-                    "FROM Producto p WHERE p.disponible = true AND " +
-                            "(LOWER(p.nombre) LIKE :termino OR LOWER(p.marca) LIKE :termino OR LOWER(p.categoria) LIKE :termino)",
-                    Producto.class);
-            query.setParameter("termino", "%" + terminoNormalizado + "%");
-            resultados.addAll(query.getResultList());
-        } catch (Exception e) {
-            System.err.println("Error buscando productos en BD: " + e.getMessage());
-        }
-        if (usarApiMercadona) {
+        CompletableFuture<List<Producto>> futureProductos = usarApiMercadona ? mercadonaApi.buscarProductos(terminoNormalizado) : null;
+        //el catalogo local se consulta en el indice en memoria en vez de con LIKE sobre toda la tabla
+        resultados.addAll(indiceBusqueda.buscar(terminoNormalizado, Integer.MAX_VALUE));
+        if (futureProductos != null) {
             try {
-                CompletableFuture<List<Producto>> futureProductos = mercadonaApi.buscarProductos(terminoNormalizado);
-                List<Producto> productosMercadona = futureProductos.get(15, TimeUnit.SECONDS);
+                List<Producto> productosMercadona = futureProductos.get(mercadonaApi.getTimeoutMs(), TimeUnit.MILLISECONDS);
                 Set<Long> idsExistentes = resultados.stream().map(Producto::getId).filter(Objects::nonNull).collect(Collectors.toSet());
                 for (Producto producto : productosMercadona) {
                     if (producto.getId() != null && !idsExistentes.contains(producto.getId())) {
@@ -178,49 +221,43 @@ public class ProductoServicio {
         if (resultados.isEmpty() || modalidad == null) {
             return resultados;
         }
-        resultados.sort(Comparator.comparing(Producto::getPrecio));
-
         String nombreModalidad = modalidad.getNombre();
         int totalProductos = resultados.size();
+        //tramo de la lista ordenada por precio que corresponde a la modalidad; solo se ordena ese tramo
+        int desde = 0;
+        int hasta = totalProductos;
 
         switch (nombreModalidad.toLowerCase()) {
             case "máximo":
-                int limiteMaximo = Math.max(5, (int) (totalProductos * 0.5));
-                return resultados.stream().limit(limiteMaximo).collect(Collectors.toList());
+                hasta = Math.max(5, (int) (totalProductos * 0.5));
+                break;
 
             case "equilibrado":
                 int inicioEquilibrado = (int) (totalProductos * 0.20);
                 int finEquilibrado = (int) (totalProductos * 0.80);
-                if (finEquilibrado <= inicioEquilibrado) {
-                    return resultados;
+                if (finEquilibrado > inicioEquilibrado) {
+                    desde = inicioEquilibrado;
+                    hasta = finEquilibrado;
                 }
-                return resultados.subList(inicioEquilibrado, finEquilibrado);
+                break;
 
             case "estándar":
-                int inicioEstandar = (int) (totalProductos * 0.50);
-                if (totalProductos <= 5) {
-                    return resultados;
+                if (totalProductos > 5) {
+                    desde = (int) (totalProductos * 0.50);
                 }
-                return resultados.subList(inicioEstandar, totalProductos);
+                break;
 
             default:
-                return resultados;
-        }
-    }
-
-    private void limpiarCacheSiNecesario() {
-        long tiempoActual = System.currentTimeMillis();
-        if (tiempoActual - ultimaLimpiezaCache > TimeUnit.MINUTES.toMillis(10)) {
-            cacheProductos.clear();
-            cacheBusquedas.clear();
-            ultimaLimpiezaCache = tiempoActual;
+                break;
         }
+        return SeleccionUtil.rangoOrdenado(resultados, Producto::getPrecio, desde, hasta);
     }
 
     public Producto obtenerProductoPorId(Long id) {
 
-        if (cacheProductos.containsKey(id)) {
-            return cacheProductos.get(id);
+        Producto enCache = cacheProductos.getIfPresent(id);
+        if (enCache != null) {
+            return enCache;
         }
 
         try (Session session = HibernateConfig.getSessionFactory().openSession()) {
@@ -241,6 +278,7 @@ public class ProductoServicio {
         }
 
         List<Producto> resultados = new ArrayList<>();
+        CompletableFuture<List<Producto>> futureProductos = isApiMercadonaDisponible() ? mercadonaApi.buscarProductos(categoria) : null;
 
         try (Session session = HibernateConfig.getSessionFactory().openSession()) {
             Query<Producto> query = session.createQuery(
@@ -252,10 +290,9 @@ public class ProductoServicio {
             System.err.println("Error buscando por categoría en BD: " + e.getMessage());
         }
 
-        if (isApiMercadonaDisponible()) {
+        if (futureProductos != null) {
             try {
-                CompletableFuture<List<Producto>> futureProductos = mercadonaApi.buscarProductos(categoria);
-                List<Producto> productosMercadona = futureProductos.get(5, TimeUnit.SECONDS);
+                List<Producto> productosMercadona = futureProductos.get(mercadonaApi.getTimeoutMs(), TimeUnit.MILLISECONDS);
 
                 Set<Long> idsExistentes = resultados.stream()
                         .map(Producto::getId)
@@ -282,64 +319,14 @@ public class ProductoServicio {
             return obtenerTodosProductos();
         }
 
-        List<Producto> todosProductos = obtenerTodosProductos();
-
-        return todosProductos.stream()
-                .filter(p -> cumpleRestricciones(p, restricciones))
-                .collect(Collectors.toList());
-    }
-
-    private boolean cumpleRestricciones(Producto producto, List<String> restricciones) {
-        if (restricciones == null || restricciones.isEmpty()) {
-            return true;
+        //las restricciones se compilan una vez y cada producto se comprueba con un AND de su mascara
+        CatalogoColumnar.Instantanea catalogo = obtenerCatalogoColumnar();
+        int[] filas = catalogo.filasCompatibles(RestriccionesDieteticas.compilar(restricciones));
+        List<Producto> compatibles = new ArrayList<>(filas.length);
+        for (int fila : filas) {
+            compatibles.add(catalogo.productos()[fila]);
         }
-
-        String categoriaLower = producto.getCategoria().toLowerCase();
-
-        for (String restriccion : restricciones) {
-            switch (restriccion.toLowerCase()) {
-                case "sin gluten":
-                    if (categoriaLower.contains("pan") || categoriaLower.contains("pasta") ||
-                            categoriaLower.contains("galleta") || categoriaLower.contains("cereal")) {
-                        return false;
-                    }
-                    break;
-                case "sin lactosa":
-                    if (categoriaLower.contains("lácteo") || categoriaLower.contains("lacteo") ||
-                            categoriaLower.contains("leche") || categoriaLower.contains("queso") ||
-                            categoriaLower.contains("yogur")) {
-                        return false;
-                    }
-                    break;
-                case "vegano":
-                    if (categoriaLower.contains("carne") || categoriaLower.contains("pescado") ||
-                            categoriaLower.contains("lácteo") || categoriaLower.contains("lacteo") ||
-                            categoriaLower.contains("huevo")) {
-                        return false;
-                    }
-                    break;
-                case "vegetariano":
-                    if (categoriaLower.contains("carne") || categoriaLower.contains("pescado")) {
-                        return false;
-                    }
-                    break;
-                case "bajo en sodio":
-                    if (producto.getInfoNutricional() != null &&
-                            producto.getInfoNutricional().getSodio() > 500) {
-                        return false;
-                    }
-                    break;
-                case "bajo en azúcar":
-                case "bajo en azucar":
-                    if (producto.getInfoNutricional() != null &&
-                            producto.getInfoNutricional().getAzucares() > 10) {
-                        return false;
-                    }
-                    break;
-            }
-        }
-
-        return true;
+        return compatibles;
     }
 
     public Producto guardarProducto(Producto producto) {
@@ -375,6 +362,9 @@ public class ProductoServicio {
                     transaction.commit();
 
                     cacheProductos.put(existente.getId(), existente);
+                    cacheBusquedas.synchronous().invalidateAll();
+                    indiceBusqueda.actualizar(existente);
+                    actualizarCatalogoColumnar(existente);
                     return existente;
                 }
             }
@@ -384,7 +374,10 @@ public class ProductoServicio {
 
             if (producto.getId() != null) {
                 cacheProductos.put(producto.getId(), producto);
+                indiceBusqueda.actualizar(producto);
+                actualizarCatalogoColumnar(producto);
             }
+            cacheBusquedas.synchronous().invalidateAll();
 
             return producto;
         } catch (Exception e) {
@@ -395,6 +388,34 @@ public class ProductoServicio {
         }
     }
 
+    private void actualizarCatalogoColumnar(Producto producto) {
+        CatalogoColumnar actual = catalogoColumnar;
+        if (actual != null) actual.actualizar(producto);
+    }
+
+    /**
+     * Lleva al catálogo por columnas lo que CatalogoCrawler vuelca a BD con MERGE,
+     * que no pasa por guardarProducto.
+     */
+    private class OyenteCatalogo implements CatalogoCrawler.Oyente {
+
+        @Override
+        public void productosGuardados(List<Producto> productos) {
+            //el listado cacheado tambien queda viejo: si no, al reconstruir el catalogo por columnas
+            //desde el se perderian los lotes ya aplicados
+            cacheBusquedas.synchronous().invalidateAll();
+            CatalogoColumnar actual = catalogoColumnar;
+            if (actual != null) actual.actualizar(productos);
+        }
+
+        @Override
+        public void productosRetirados() {
+            //no se sabe que filas han cambiado: se reconstruye desde BD en la siguiente lectura
+            cacheBusquedas.synchronous().invalidateAll();
+            catalogoColumnar = null;
+        }
+    }
+
     public boolean isApiMercadonaDisponible() {
         return usarApiMercadona && mercadonaApi != null && mercadonaApi.isApiDisponible();
     }
@@ -403,7 +424,8 @@ public class ProductoServicio {
         if (mercadonaApi != null) {
             mercadonaApi.cerrar();
         }
-        cacheProductos.clear();
-        cacheBusquedas.clear();
+        cacheProductos.invalidateAll();
+        cacheBusquedas.synchronous().invalidateAll();
+        catalogoColumnar = null;
     }
 }
\ No newline at end of file
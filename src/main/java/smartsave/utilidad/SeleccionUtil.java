@@ -0,0 +1,162 @@
+package smartsave.utilidad;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Selección por clave numérica sin ordenar la lista entera.
+ *
+ * Las claves (normalmente el precio) se calculan una sola vez en un double[], en
+ * lugar de en cada comparación, y se ordenan índices. Con claves iguales manda la
+ * posición original, así que el resultado coincide con el de un sort estable
+ * seguido de subList o get(0).
+ */
+public class SeleccionUtil {
+
+    private static final int UMBRAL_INSERCION = 16;
+
+    private SeleccionUtil() {
+    }
+
+    /**
+     * Equivale a ordenar por la clave y hacer get(0): el primero con la clave más baja.
+     * @return null si la lista está vacía
+     */
+    public static <T> T minimo(List<T> elementos, ToDoubleFunction<? super T> clave) {
+        T mejor = null;
+        double claveMejor = 0;
+        for (T elemento : elementos) {
+            double valor = clave.applyAsDouble(elemento);
+            if (mejor == null || Double.compare(valor, claveMejor) < 0) {
+                mejor = elemento;
+                claveMejor = valor;
+            }
+        }
+        return mejor;
+    }
+
+    /**
+     * Equivale a ordenar por la clave y hacer get(0) con el orden invertido: el primero con la clave más alta.
+     * @return null si la lista está vacía
+     */
+    public static <T> T maximo(List<T> elementos, ToDoubleFunction<? super T> clave) {
+        T mejor = null;
+        double claveMejor = 0;
+        for (T elemento : elementos) {
+            double valor = clave.applyAsDouble(elemento);
+            if (mejor == null || Double.compare(valor, claveMejor) > 0) {
+                mejor = elemento;
+                claveMejor = valor;
+            }
+        }
+        return mejor;
+    }
+
+    /**
+     * Equivale a ordenar por la clave de menor a mayor y quedarse con subList(desde, hasta),
+     * pero solo se ordenan los elementos de ese tramo: O(n + k log k) con k = hasta - desde.
+     * Los límites se ajustan al tamaño de la lista.
+     */
+    public static <T> List<T> rangoOrdenado(List<T> elementos, ToDoubleFunction<? super T> clave, int desde, int hasta) {
+        int n = elementos.size();
+        desde = Math.max(0, desde);
+        hasta = Math.min(n, hasta);
+        if (desde >= hasta) return new ArrayList<>();
+
+        double[] claves = new double[n];
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            claves[i] = clave.applyAsDouble(elementos.get(i));
+            indices[i] = i;
+        }
+
+        //tras las dos selecciones el tramo [desde, hasta) tiene exactamente esos rangos, aunque desordenados
+        if (desde > 0) seleccionar(indices, claves, 0, n - 1, desde);
+        if (hasta < n) seleccionar(indices, claves, desde, n - 1, hasta);
+        ordenar(indices, claves, desde, hasta - 1);
+
+        List<T> resultado = new ArrayList<>(hasta - desde);
+        for (int i = desde; i < hasta; i++) {
+            resultado.add(elementos.get(indices[i]));
+        }
+        return resultado;
+    }
+
+    /**
+     * Orden de las claves de menor a mayor, como posiciones en el array; con claves
+     * iguales va primero la posición más baja. Para ordenar columnas de primitivos
+     * sin crear objetos.
+     */
+    public static int[] ordenarPorClave(double[] claves) {
+        int[] indices = new int[claves.length];
+        for (int i = 0; i < indices.length; i++) indices[i] = i;
+        if (indices.length > 1) ordenar(indices, claves, 0, indices.length - 1);
+        return indices;
+    }
+
+    /**
+     * Quickselect: deja en la posición k el elemento de rango k, con los menores a su izquierda
+     * y los mayores a su derecha.
+     */
+    private static void seleccionar(int[] indices, double[] claves, int izquierda, int derecha, int k) {
+        while (derecha > izquierda) {
+            int pivote = particionar(indices, claves, izquierda, derecha);
+            if (pivote == k) return;
+            if (pivote < k) izquierda = pivote + 1;
+            else derecha = pivote - 1;
+        }
+    }
+
+    private static void ordenar(int[] indices, double[] claves, int izquierda, int derecha) {
+        while (derecha - izquierda > UMBRAL_INSERCION) {
+            int pivote = particionar(indices, claves, izquierda, derecha);
+            //se recurre en el lado corto para no pasar de log n niveles de pila
+            if (pivote - izquierda < derecha - pivote) {
+                ordenar(indices, claves, izquierda, pivote - 1);
+                izquierda = pivote + 1;
+            } else {
+                ordenar(indices, claves, pivote + 1, derecha);
+                derecha = pivote - 1;
+            }
+        }
+        for (int i = izquierda + 1; i <= derecha; i++) {
+            int actual = indices[i];
+            int j = i - 1;
+            while (j >= izquierda && menor(actual, indices[j], claves)) {
+                indices[j + 1] = indices[j];
+                j--;
+            }
+            indices[j + 1] = actual;
+        }
+    }
+
+    /**
+     * Partición de Lomuto con pivote aleatorio, para que una lista ya ordenada no sea el peor caso.
+     * @return posición final del pivote
+     */
+    private static int particionar(int[] indices, double[] claves, int izquierda, int derecha) {
+        intercambiar(indices, ThreadLocalRandom.current().nextInt(izquierda, derecha + 1), derecha);
+        int pivote = indices[derecha];
+        int siguiente = izquierda;
+        for (int i = izquierda; i < derecha; i++) {
+            if (menor(indices[i], pivote, claves)) {
+                intercambiar(indices, i, siguiente++);
+            }
+        }
+        intercambiar(indices, siguiente, derecha);
+        return siguiente;
+    }
+
+    private static boolean menor(int a, int b, double[] claves) {
+        int comparacion = Double.compare(claves[a], claves[b]);
+        return comparacion < 0 || (comparacion == 0 && a < b);
+    }
+
+    private static void intercambiar(int[] indices, int i, int j) {
+        int aux = indices[i];
+        indices[i] = indices[j];
+        indices[j] = aux;
+    }
+}
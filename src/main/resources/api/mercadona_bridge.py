@@ -2,10 +2,16 @@
 # -*- coding: utf-8 -*-
 import sys
 import json
+import gzip
+import hashlib
 import logging
 import traceback
 import os
-from flask import Flask, request, jsonify
+import argparse
+import threading
+from concurrent.futures import ThreadPoolExecutor
+import requests
+from flask import Flask, Response, request, jsonify
 
 logging.basicConfig(
     level=logging.INFO,
@@ -23,13 +29,45 @@ except ImportError as e:
     logger.error(f"{error_msg}: {str(e)}")
     sys.exit(1)
 
+# CBOR es opcional: sin cbor2 se responde siempre en JSON
+try:
+    import cbor2
+except ImportError:
+    cbor2 = None
+    logger.info("cbor2 no está instalado, las respuestas serán solo JSON")
+
 # Inicializamos el servidor Web
 app = Flask(__name__)
 
-def search_products(query, postcode, limit=20):
+# Construir mercapy.Mercadona(postcode) resuelve el almacén contra la tienda, así
+# que se hace una sola vez por código postal y el manejador se reutiliza. El código
+# del almacén sirve además de token: si el cliente lo envía (parámetro 'wh'), se
+# usa directamente el manejador de ese almacén
+_handles_lock = threading.Lock()
+_handles_by_postcode = {}
+_handles_by_warehouse = {}
+
+def get_mercadona(postcode, warehouse=None):
+    if warehouse:
+        handle = _handles_by_warehouse.get(warehouse)
+        if handle is not None:
+            return handle
+    handle = _handles_by_postcode.get(postcode)
+    if handle is not None:
+        return handle
+    with _handles_lock:
+        handle = _handles_by_postcode.get(postcode)
+        if handle is None:
+            handle = mercapy.Mercadona(postcode)
+            _handles_by_postcode[postcode] = handle
+            _handles_by_warehouse.setdefault(handle.warehouse, handle)
+            logger.info(f"Código postal {postcode} resuelto al almacén {handle.warehouse}")
+    return handle
+
+def search_products(query, postcode, limit=20, warehouse=None):
     try:
         logger.info(f"Iniciando búsqueda de: '{query}' en código postal {postcode}")
-        merca = mercapy.Mercadona(postcode)
+        merca = get_mercadona(postcode, warehouse)
         products = merca.search(query)
         logger.info(f"Encontrados {len(products)} productos para '{query}'")
 
@@ -96,9 +134,35 @@ def search_products(query, postcode, limit=20):
         error_details = traceback.format_exc()
         return {"success": False, "error": str(e), "details": error_details}
 
-def get_product_detail(product_id, postcode):
+# Búsquedas o detalles de un lote que se lanzan a la vez; se ajusta con --workers.
+# El valor por defecto es el mismo que TRABAJADORES en MercadonaBridgeSupervisor
+DEFAULT_WORKERS = 10
+batch_workers = DEFAULT_WORKERS
+
+def search_products_batch(queries, postcode, limit=20, warehouse=None):
+    # Las búsquedas de un lote se lanzan en paralelo contra mercapy; cada término
+    # conserva su propia lista de resultados aunque otro término falle
+    results = {}
+    unique_queries = list(dict.fromkeys(q for q in queries if q))
+    if not unique_queries:
+        return {"success": True, "data": results}
+
+    with ThreadPoolExecutor(max_workers=min(batch_workers, len(unique_queries))) as executor:
+        futures = {q: executor.submit(search_products, q, postcode, limit, warehouse) for q in unique_queries}
+        for query, future in futures.items():
+            try:
+                result = future.result()
+            except Exception as e:
+                logger.error(f"Error en búsqueda por lotes de '{query}': {str(e)}")
+                result = {"success": False}
+            results[query] = result.get("data", []) if result.get("success") else []
+
+    logger.info(f"Lote de {len(unique_queries)} búsquedas procesado")
+    return {"success": True, "data": results}
+
+def get_product_detail(product_id, postcode, warehouse=None):
     try:
-        warehouse = get_warehouse_from_postcode(postcode)
+        warehouse = get_warehouse_from_postcode(postcode, warehouse)
         product = mercapy.Product(product_id, warehouse=warehouse)
 
         if product.not_found():
@@ -157,9 +221,32 @@ def get_product_detail(product_id, postcode):
     except Exception as e:
         return {"success": False, "error": str(e), "details": traceback.format_exc()}
 
-def get_new_arrivals(postcode, limit=20):
+def get_product_details_batch(product_ids, postcode, warehouse=None):
+    # El almacén se resuelve una sola vez para todo el lote; los ids que no se
+    # encuentran simplemente no aparecen en el resultado
+    results = {}
+    unique_ids = list(dict.fromkeys(i for i in product_ids if i))
+    if not unique_ids:
+        return {"success": True, "data": results}
+
+    warehouse = get_warehouse_from_postcode(postcode, warehouse)
+    with ThreadPoolExecutor(max_workers=min(batch_workers, len(unique_ids))) as executor:
+        futures = {i: executor.submit(get_product_detail, i, postcode, warehouse) for i in unique_ids}
+        for product_id, future in futures.items():
+            try:
+                result = future.result()
+            except Exception as e:
+                logger.error(f"Error en detalle por lotes de '{product_id}': {str(e)}")
+                continue
+            if result.get("success"):
+                results[product_id] = result["data"]
+
+    logger.info(f"Lote de {len(unique_ids)} detalles procesado, {len(results)} encontrados")
+    return {"success": True, "data": results}
+
+def get_new_arrivals(postcode, limit=20, warehouse=None):
     try:
-        merca = mercapy.Mercadona(postcode)
+        merca = get_mercadona(postcode, warehouse)
         products = merca.get_new_arrivals()
 
         results = []
@@ -210,13 +297,126 @@ def get_new_arrivals(postcode, limit=20):
     except Exception as e:
         return {"success": False, "error": str(e), "details": traceback.format_exc()}
 
-def get_warehouse_from_postcode(postcode):
+# mercapy no recorre categorías, así que el catálogo completo se pide a la API de
+# la tienda directamente, con el mismo almacén que el resto de llamadas
+TIENDA_API = "https://tienda.mercadona.es/api"
+
+def get_categories(postcode, warehouse=None):
+    try:
+        warehouse = get_warehouse_from_postcode(postcode, warehouse)
+        response = requests.get(f"{TIENDA_API}/categories/", params={'lang': 'es', 'wh': warehouse}, timeout=15)
+        response.raise_for_status()
+
+        # Solo las categorías de segundo nivel tienen productos
+        results = []
+        for section in response.json().get('results', []):
+            for category in section.get('categories', []):
+                if category.get('id') is not None:
+                    results.append({'id': int(category['id']), 'name': category.get('name', ''), 'section': section.get('name', '')})
+        return {"success": True, "data": results}
+    except Exception as e:
+        return {"success": False, "error": str(e), "details": traceback.format_exc()}
+
+def get_category_products(category_id, postcode, warehouse=None):
+    try:
+        warehouse = get_warehouse_from_postcode(postcode, warehouse)
+        response = requests.get(f"{TIENDA_API}/categories/{category_id}/", params={'lang': 'es', 'wh': warehouse}, timeout=15)
+        if response.status_code == 404:
+            return {"success": True, "data": []}
+        response.raise_for_status()
+        category = response.json()
+
+        results = []
+        for subcategory in category.get('categories', []):
+            category_name = subcategory.get('name') or category.get('name') or 'Sin categoría'
+            for product in subcategory.get('products', []):
+                try:
+                    results.append({
+                        'id': str(product['id']),
+                        'name': product.get('display_name') or '',
+                        'brand': product.get('brand') or 'Mercadona',
+                        'category': category_name,
+                        'unit_price': float((product.get('price_instructions') or {}).get('unit_price') or 0.0)
+                    })
+                except Exception:
+                    pass
+        logger.info(f"Categoría {category_id}: {len(results)} productos")
+        return {"success": True, "data": results}
+    except Exception as e:
+        return {"success": False, "error": str(e), "details": traceback.format_exc()}
+
+def get_warehouse_from_postcode(postcode, warehouse=None):
+    if warehouse:
+        return warehouse
     try:
-        merca = mercapy.Mercadona(postcode)
-        return merca.warehouse
+        return get_mercadona(postcode).warehouse
     except Exception:
         return "mad1"
 
+# === PROYECCIÓN, COMPRESIÓN Y PETICIONES CONDICIONALES ===
+
+# El cliente puede pedir solo algunos campos de cada producto (parámetro 'fields',
+# separados por comas, o lista 'fields' en los cuerpos JSON)
+def parse_fields(value):
+    if not value:
+        return None
+    if isinstance(value, str):
+        value = value.split(',')
+    fields = {str(f).strip() for f in value if str(f).strip()}
+    return fields or None
+
+def project_product(product, fields):
+    if not fields or not isinstance(product, dict):
+        return product
+    return {k: v for k, v in product.items() if k in fields}
+
+def project_products(result, fields):
+    if fields and result.get('success') and isinstance(result.get('data'), list):
+        result['data'] = [project_product(p, fields) for p in result['data']]
+    return result
+
+def project_product_map(result, fields):
+    # data es término -> lista de productos o id -> producto
+    if fields and result.get('success') and isinstance(result.get('data'), dict):
+        result['data'] = {k: [project_product(p, fields) for p in v] if isinstance(v, list) else project_product(v, fields)
+                          for k, v in result['data'].items()}
+    return result
+
+JSON_MIMETYPE = 'application/json'
+CBOR_MIMETYPE = 'application/cbor'
+GZIP_MIN_BYTES = 512
+
+def respond(result):
+    # El formato se negocia con la cabecera Accept; el cliente Java pide CBOR con
+    # JSON como alternativa y decide cómo leer por el Content-Type de la respuesta
+    if cbor2 is not None and request.accept_mimetypes.best_match([JSON_MIMETYPE, CBOR_MIMETYPE]) == CBOR_MIMETYPE:
+        return Response(cbor2.dumps(result), mimetype=CBOR_MIMETYPE)
+    return jsonify(result)
+
+@app.after_request
+def conditional_and_compressed(response):
+    # El ETag se calcula sobre el cuerpo sin comprimir y es débil, así que sirve igual
+    # para la versión gzip. Si el cliente ya tiene esa respuesta se le devuelve un 304
+    # vacío, también en los POST por lotes, que aquí son consultas sin efectos
+    if response.status_code != 200 or response.direct_passthrough or response.mimetype not in (JSON_MIMETYPE, CBOR_MIMETYPE):
+        return response
+
+    body = response.get_data()
+    etag = hashlib.sha1(body).hexdigest()
+    response.set_etag(etag, weak=True)
+    # El cuerpo depende del formato negociado (JSON o CBOR) y de la compresión
+    response.headers['Vary'] = 'Accept, Accept-Encoding'
+
+    if request.if_none_match.contains_weak(etag):
+        response.status_code = 304
+        response.set_data(b'')
+        return response
+
+    if len(body) >= GZIP_MIN_BYTES and 'gzip' in request.headers.get('Accept-Encoding', ''):
+        response.set_data(gzip.compress(body, compresslevel=5))
+        response.headers['Content-Encoding'] = 'gzip'
+    return response
+
 # === RUTAS DE LA API WEB (FLASK) ===
 
 @app.route('/health', methods=['GET'])
@@ -232,16 +432,29 @@ def api_search():
     if not query:
         return jsonify({"success": False, "error": "Query es requerido para búsqueda"}), 400
 
-    result = search_products(query, postcode, limit)
-    return jsonify(result)
+    result = search_products(query, postcode, limit, request.args.get('wh'))
+    return respond(project_products(result, parse_fields(request.args.get('fields'))))
+
+@app.route('/search_batch', methods=['POST'])
+def api_search_batch():
+    payload = request.get_json(silent=True) or {}
+    queries = payload.get('terms', [])
+    postcode = payload.get('postcode', '14010')
+    limit = int(payload.get('limit', 25))
+
+    if not isinstance(queries, list) or not queries:
+        return jsonify({"success": False, "error": "Se requiere una lista de términos"}), 400
+
+    result = search_products_batch([str(q) for q in queries], postcode, limit, payload.get('warehouse'))
+    return respond(project_product_map(result, parse_fields(payload.get('fields'))))
 
 @app.route('/new', methods=['GET'])
 def api_new():
     postcode = request.args.get('postcode', '14010')
     limit = int(request.args.get('limit', 30))
 
-    result = get_new_arrivals(postcode, limit)
-    return jsonify(result)
+    result = get_new_arrivals(postcode, limit, request.args.get('wh'))
+    return respond(project_products(result, parse_fields(request.args.get('fields'))))
 
 @app.route('/detail', methods=['GET'])
 def api_detail():
@@ -251,9 +464,105 @@ def api_detail():
     if not product_id:
         return jsonify({"success": False, "error": "ID del producto es requerido"}), 400
 
-    result = get_product_detail(product_id, postcode)
+    result = get_product_detail(product_id, postcode, request.args.get('wh'))
+    if result.get('success'):
+        result['data'] = project_product(result['data'], parse_fields(request.args.get('fields')))
+    return respond(result)
+
+@app.route('/warehouse', methods=['GET'])
+def api_warehouse():
+    postcode = request.args.get('postcode', '14010')
+    # A diferencia de get_warehouse_from_postcode, aquí no se devuelve el almacén por
+    # defecto: el cliente guarda la respuesta como token y no debe quedarse con uno falso
+    try:
+        warehouse = get_mercadona(postcode).warehouse
+    except Exception as e:
+        return jsonify({"success": False, "error": str(e)})
+    return jsonify({"success": True, "data": {"postcode": postcode, "warehouse": warehouse}})
+
+@app.route('/detail_batch', methods=['POST'])
+def api_detail_batch():
+    payload = request.get_json(silent=True) or {}
+    product_ids = payload.get('ids', [])
+    postcode = payload.get('postcode', '14010')
+
+    if not isinstance(product_ids, list) or not product_ids:
+        return jsonify({"success": False, "error": "Se requiere una lista de IDs"}), 400
+
+    result = get_product_details_batch([str(i) for i in product_ids], postcode, payload.get('warehouse'))
+    return respond(project_product_map(result, parse_fields(payload.get('fields'))))
+
+@app.route('/categories', methods=['GET'])
+def api_categories():
+    postcode = request.args.get('postcode', '14010')
+
+    result = get_categories(postcode, request.args.get('wh'))
     return jsonify(result)
 
+@app.route('/category', methods=['GET'])
+def api_category():
+    category_id = request.args.get('id', '')
+    postcode = request.args.get('postcode', '14010')
+
+    if not category_id:
+        return jsonify({"success": False, "error": "ID de la categoría es requerido"}), 400
+
+    result = get_category_products(category_id, postcode, request.args.get('wh'))
+    return respond(project_products(result, parse_fields(request.args.get('fields'))))
+
+# Línea que espera el supervisor Java para saber que el servidor ya acepta conexiones
+READY_SIGNAL = "SMARTSAVE_BRIDGE_READY"
+
+def exit_when_parent_dies():
+    # El supervisor Java mantiene abierto nuestro stdin; si la JVM muere sin
+    # poder cerrarnos, la lectura llega a EOF y el puente se apaga solo
+    try:
+        while sys.stdin.read(1024):
+            pass
+    except Exception:
+        pass
+    logger.info("El proceso Java ha terminado, apagando Mercadona Bridge")
+    os._exit(0)
+
+class WorkerLimit:
+    # Cada conexión tiene su hilo (las conexiones keep-alive inactivas no deben
+    # ocupar un trabajador), pero como mucho 'workers' peticiones se atienden a la
+    # vez; el resto espera su turno en lugar de saturar a mercapy
+    def __init__(self, wsgi_app, workers):
+        self.wsgi_app = wsgi_app
+        self.slots = threading.BoundedSemaphore(workers)
+
+    def __call__(self, environ, start_response):
+        with self.slots:
+            return self.wsgi_app(environ, start_response)
+
 if __name__ == '__main__':
-    logger.info("Iniciando servidor REST de Mercadona Bridge en el puerto 5000...")
-    app.run(host='127.0.0.1', port=5000, debug=False, use_reloader=False)
\ No newline at end of file
+    from werkzeug.serving import make_server
+
+    parser = argparse.ArgumentParser()
+    # Con --port 0 se escoge un puerto libre; con --unix-socket se escucha en ese
+    # fichero en lugar de en TCP. En ambos casos la dirección se anuncia en la señal
+    parser.add_argument('--port', type=int, default=5000)
+    parser.add_argument('--unix-socket', default=None)
+    # Peticiones atendidas en paralelo; el cliente Java dimensiona su pool de conexiones igual
+    parser.add_argument('--workers', type=int, default=DEFAULT_WORKERS)
+    args = parser.parse_args()
+
+    workers = max(1, args.workers)
+    batch_workers = workers
+    app.wsgi_app = WorkerLimit(app.wsgi_app, workers)
+
+    if args.unix_socket:
+        # Un socket que quedó de una ejecución anterior impediría hacer bind
+        if os.path.exists(args.unix_socket):
+            os.unlink(args.unix_socket)
+        server = make_server(f"unix://{args.unix_socket}", 0, app, threaded=True)
+        address = f"unix:{args.unix_socket}"
+    else:
+        server = make_server('127.0.0.1', args.port, app, threaded=True)
+        address = str(server.port)
+    threading.Thread(target=exit_when_parent_dies, daemon=True).start()
+
+    logger.info(f"Servidor REST de Mercadona Bridge escuchando en {address} con {workers} trabajadores")
+    print(f"{READY_SIGNAL} {address}", flush=True)
+    server.serve_forever()
\ No newline at end of file
@@ -0,0 +1,137 @@
+package smartsave.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import smartsave.modelo.Producto;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClienteMercadonaDirectoTest {
+
+    private static final String LECHE = """
+            {"id": "71001", "display_name": "Leche entera", "brand": "Hacendado",
+             "categories": [{"id": 7, "name": "Lácteos", "level": 0}],
+             "price_instructions": {"unit_price": "0.95", "bulk_price": "0.95"}}""";
+    private static final String PAN = """
+            {"id": "71002", "display_name": "Pan de molde", "details": {"brand": "Hacendado"},
+             "categories": [{"id": 9, "name": "Panadería", "level": 0}],
+             "price_instructions": {"unit_price": "1.20"}}""";
+
+    private HttpServer servidor;
+    private ClienteMercadonaDirecto cliente;
+    private final AtomicInteger resolucionesAlmacen = new AtomicInteger();
+    private final AtomicReference<String> precioCategoria = new AtomicReference<>("0.95");
+
+    @BeforeEach
+    void arrancarStub() throws IOException {
+        MercadonaAdapter.limpiarCache();
+        servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+        servidor.createContext("/api/postal-codes/actions/change-pc/", intercambio -> {
+            resolucionesAlmacen.incrementAndGet();
+            intercambio.getResponseHeaders().add("x-customer-wh", "svq1");
+            responder(intercambio, 200, "{}");
+        });
+        servidor.createContext("/api/products/", intercambio -> {
+            if (intercambio.getRequestURI().getPath().equals("/api/products/71001/")) {
+                responder(intercambio, 200, LECHE);
+            } else {
+                responder(intercambio, 404, "{}");
+            }
+        });
+        servidor.createContext("/api/categories/", intercambio -> {
+            if (intercambio.getRequestURI().getPath().equals("/api/categories/112/")) {
+                responder(intercambio, 200, "{\"name\": \"Leche y bebidas vegetales\", \"categories\": [{\"name\": \"Leche\", \"products\": ["
+                        + LECHE.replace("\"0.95\"", "\"" + precioCategoria.get() + "\"") + "]}]}");
+            } else {
+                responder(intercambio, 404, "{}");
+            }
+        });
+        servidor.createContext("/1/indexes/", intercambio -> {
+            String ruta = intercambio.getRequestURI().getPath();
+            if (ruta.equals("/1/indexes/products_prod_svq1_es/query")) {
+                responder(intercambio, 200, "{\"hits\": [" + LECHE + "]}");
+            } else if (ruta.equals("/1/indexes/*/queries")) {
+                responder(intercambio, 200, "{\"results\": [{\"hits\": [" + LECHE + "]}, {\"hits\": [" + PAN + "]}]}");
+            } else {
+                responder(intercambio, 404, "{}");
+            }
+        });
+        servidor.start();
+
+        String base = "http://127.0.0.1:" + servidor.getAddress().getPort();
+        cliente = new ClienteMercadonaDirecto(new OkHttpClient(), base + "/api", base, "app", "clave");
+    }
+
+    @AfterEach
+    void pararStub() {
+        servidor.stop(0);
+    }
+
+    private static void responder(HttpExchange intercambio, int codigo, String cuerpo) throws IOException {
+        byte[] bytes = cuerpo.getBytes(StandardCharsets.UTF_8);
+        intercambio.getResponseHeaders().add("Content-Type", "application/json");
+        intercambio.sendResponseHeaders(codigo, bytes.length);
+        intercambio.getResponseBody().write(bytes);
+        intercambio.close();
+    }
+
+    @Test
+    void buscar_convierteLosHitsYResuelveElAlmacenUnaSolaVez() throws Exception {
+        List<Producto> productos = cliente.buscar("leche", "41001", 25);
+        cliente.buscar("leche", "41001", 25);
+
+        assertEquals(1, productos.size());
+        Producto leche = productos.get(0);
+        assertEquals(71001L, leche.getId());
+        assertEquals("Leche entera", leche.getNombre());
+        assertEquals("Hacendado", leche.getMarca());
+        assertEquals("Lácteos", leche.getCategoria());
+        assertEquals(0.95, leche.getPrecio(), 0.001);
+        assertEquals(1, resolucionesAlmacen.get());
+    }
+
+    @Test
+    void buscarLote_asociaCadaResultadoASuTermino() throws Exception {
+        Map<String, List<Producto>> resultados = cliente.buscarLote(List.of("leche", "pan"), "41001", 25);
+
+        assertEquals("Leche entera", resultados.get("leche").get(0).getNombre());
+        assertEquals("Pan de molde", resultados.get("pan").get(0).getNombre());
+        assertEquals("Hacendado", resultados.get("pan").get(0).getMarca());
+    }
+
+    @Test
+    void obtenerProductosCategoria_cadaPasadaLeeElPrecioActual() throws Exception {
+        Producto primeraPasada = cliente.obtenerProductosCategoria(112L, "41001").get(0);
+        precioCategoria.set("1.05");
+        Producto segundaPasada = cliente.obtenerProductosCategoria(112L, "41001").get(0);
+
+        assertEquals(0.95, primeraPasada.getPrecio(), 0.001);
+        assertEquals(1.05, segundaPasada.getPrecio(), 0.001);
+        //el recorrido del catalogo no llena la cache de productos de la interfaz
+        assertEquals(0, MercadonaAdapter.tamanoCache());
+        assertTrue(cliente.obtenerProductosCategoria(999L, "41001").isEmpty());
+    }
+
+    @Test
+    void obtenerDetalles_omiteLosIdsQueNoExisten() throws Exception {
+        Map<Long, Producto> detalles = cliente.obtenerDetalles(List.of(71001L, 79999L), "41001");
+
+        assertTrue(detalles.containsKey(71001L));
+        assertFalse(detalles.containsKey(79999L));
+    }
+}
@@ -0,0 +1,72 @@
+package smartsave.api;
+
+import org.junit.jupiter.api.Test;
+import smartsave.modelo.Producto;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CoalescedorBusquedasTest {
+
+    @Test
+    void busquedasDentroDeLaVentana_seEnvianEnUnSoloLote() throws Exception {
+        List<List<String>> lotesEnviados = new ArrayList<>();
+        ScheduledExecutorService planificador = Executors.newSingleThreadScheduledExecutor();
+
+        CoalescedorBusquedas coalescedor = new CoalescedorBusquedas(50, 10, terminos -> {
+            synchronized (lotesEnviados) {
+                lotesEnviados.add(terminos);
+            }
+            Map<String, List<Producto>> resultados = new HashMap<>();
+            for (String termino : terminos) {
+                resultados.put(termino, List.of(new Producto(termino, "Mercadona", "Otros", 1.0, "Mercadona")));
+            }
+            return resultados;
+        }, Runnable::run, planificador);
+
+        try {
+            CompletableFuture<List<Producto>> arroz = coalescedor.encolar("arroz");
+            CompletableFuture<List<Producto>> leche = coalescedor.encolar("leche");
+            CompletableFuture<List<Producto>> lecheRepetida = coalescedor.encolar("leche");
+
+            assertEquals("arroz", arroz.get(5, TimeUnit.SECONDS).get(0).getNombre());
+            assertEquals("leche", leche.get(5, TimeUnit.SECONDS).get(0).getNombre());
+            assertSame(leche, lecheRepetida, "el mismo término dentro de la ventana debe compartir el futuro");
+            assertEquals(1, lotesEnviados.size());
+            assertEquals(List.of("arroz", "leche"), lotesEnviados.get(0));
+        } finally {
+            planificador.shutdownNow();
+        }
+    }
+
+    @Test
+    void loteLleno_seEnviaSinEsperarLaVentana() throws Exception {
+        List<List<String>> lotesEnviados = new ArrayList<>();
+        ScheduledExecutorService planificador = Executors.newSingleThreadScheduledExecutor();
+
+        CoalescedorBusquedas coalescedor = new CoalescedorBusquedas(TimeUnit.MINUTES.toMillis(1), 2, terminos -> {
+            lotesEnviados.add(terminos);
+            return Map.of();
+        }, Runnable::run, planificador);
+
+        try {
+            CompletableFuture<List<Producto>> pan = coalescedor.encolar("pan");
+            CompletableFuture<List<Producto>> sal = coalescedor.encolar("sal");
+
+            assertEquals(0, pan.get(1, TimeUnit.SECONDS).size());
+            assertEquals(0, sal.get(1, TimeUnit.SECONDS).size());
+            assertEquals(1, lotesEnviados.size());
+        } finally {
+            planificador.shutdownNow();
+        }
+    }
+}
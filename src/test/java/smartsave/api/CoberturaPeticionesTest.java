@@ -0,0 +1,114 @@
+package smartsave.api;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoberturaPeticionesTest {
+
+    private final ExecutorService ejecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService planificador = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void cerrar() {
+        ejecutor.shutdownNow();
+        planificador.shutdownNow();
+    }
+
+    @Test
+    void ejecutar_siLaPrimeraTardaGanaLaCopiaYSeCancelaLaPrimera() throws Exception {
+        CoberturaPeticiones cobertura = new CoberturaPeticiones(100, planificador, ejecutor);
+        AtomicInteger intentos = new AtomicInteger();
+        CountDownLatch primeraCancelada = new CountDownLatch(1);
+
+        long inicio = System.nanoTime();
+        String resultado = cobertura.ejecutar(() -> {
+            if (intentos.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    primeraCancelada.countDown();
+                    throw new InterruptedIOException();
+                }
+                return "lenta";
+            }
+            return "copia";
+        }, 50, 2000);
+        long duracionMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+
+        assertEquals("copia", resultado);
+        assertTrue(duracionMs < 2000);
+        assertTrue(primeraCancelada.await(2, TimeUnit.SECONDS));
+        assertEquals(1, cobertura.getCoberturasGanadoras());
+    }
+
+    @Test
+    void ejecutar_respetaElPresupuestoDeCoberturas() throws Exception {
+        //con un 50% la primera peticion no puede cubrirse y la segunda si
+        CoberturaPeticiones cobertura = new CoberturaPeticiones(50, planificador, ejecutor);
+        AtomicInteger intentos = new AtomicInteger();
+        CoberturaPeticiones.Llamada<String> lenta = () -> {
+            intentos.incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return "ok";
+        };
+
+        cobertura.ejecutar(lenta, 10, 2000);
+        assertEquals(1, intentos.get());
+        assertEquals(0, cobertura.getCoberturasLanzadas());
+
+        cobertura.ejecutar(lenta, 10, 2000);
+        assertEquals(1, cobertura.getCoberturasLanzadas());
+    }
+
+    @Test
+    void ejecutar_siLaPrimeraFallaEsperaALaCopiaSoloHastaElLimite() throws Exception {
+        CoberturaPeticiones cobertura = new CoberturaPeticiones(100, planificador, ejecutor);
+        AtomicInteger intentos = new AtomicInteger();
+        CoberturaPeticiones.Llamada<String> primeraFallaCopiaColgada = () -> {
+            if (intentos.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                throw new IOException("fallo");
+            }
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return "copia";
+        };
+
+        long inicio = System.nanoTime();
+        assertThrows(IOException.class, () -> cobertura.ejecutar(primeraFallaCopiaColgada, 20, 200));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) < 2000);
+        assertEquals(1, cobertura.getCoberturasLanzadas());
+    }
+
+    @Test
+    void ejecutar_sinLatenciasSuficientesNoCubre() throws Exception {
+        CoberturaPeticiones cobertura = new CoberturaPeticiones(100, planificador, ejecutor);
+
+        assertEquals("ok", cobertura.ejecutar(() -> "ok", -1, 2000));
+        assertEquals(0, cobertura.getCoberturasLanzadas());
+    }
+}
@@ -0,0 +1,61 @@
+package smartsave.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import smartsave.modelo.Producto;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LectorRespuestasMercadonaTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    @BeforeEach
+    void limpiarCache() {
+        MercadonaAdapter.limpiarCache();
+    }
+
+    private ObjectNode respuesta(boolean exito) {
+        ObjectNode raiz = objectMapper.createObjectNode();
+        raiz.putArray("data").addObject()
+                .put("id", "4241")
+                .put("name", "Leche semidesnatada")
+                .put("brand", "Hacendado")
+                .put("category", "Lácteos")
+                .put("unit_price", 0.89);
+        raiz.put("success", exito);
+        return raiz;
+    }
+
+    @Test
+    void leerProductos_cborDaLoMismoQueJson() throws Exception {
+        ObjectNode raiz = respuesta(true);
+
+        List<Producto> desdeJson = new LectorRespuestasMercadona(objectMapper.getFactory())
+                .leerProductos(new ByteArrayInputStream(objectMapper.writeValueAsBytes(raiz)));
+        MercadonaAdapter.limpiarCache();
+        List<Producto> desdeCbor = new LectorRespuestasMercadona(cborMapper.getFactory())
+                .leerProductos(new ByteArrayInputStream(cborMapper.writeValueAsBytes(raiz)));
+
+        assertEquals(1, desdeCbor.size());
+        assertEquals(desdeJson.get(0).getId(), desdeCbor.get(0).getId());
+        assertEquals(desdeJson.get(0).getNombre(), desdeCbor.get(0).getNombre());
+        assertEquals(0.89, desdeCbor.get(0).getPrecio(), 0.001);
+    }
+
+    @Test
+    void leerProductos_sinExitoDevuelveListaVacia() throws Exception {
+        List<Producto> productos = new LectorRespuestasMercadona(cborMapper.getFactory())
+                .leerProductos(new ByteArrayInputStream(cborMapper.writeValueAsBytes(respuesta(false))));
+
+        assertTrue(productos.isEmpty());
+    }
+}
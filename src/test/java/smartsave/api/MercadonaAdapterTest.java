@@ -0,0 +1,44 @@
+package smartsave.api;
+
+import org.junit.jupiter.api.Test;
+import smartsave.modelo.Producto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class MercadonaAdapterTest {
+
+    @Test
+    void crearProducto_mismoId_devuelveLaInstanciaCacheada() {
+        MercadonaAdapter.limpiarCache();
+
+        Producto primero = MercadonaAdapter.crearProducto("4241", "Leche semidesnatada", "Hacendado", "Lácteos", 0.89);
+        Producto segundo = MercadonaAdapter.crearProducto("4241", "Leche semidesnatada", "Hacendado", "Lácteos", 0.89);
+
+        assertNotNull(primero);
+        assertSame(primero, segundo);
+        assertEquals(1, MercadonaAdapter.tamanoCache());
+    }
+
+    @Test
+    void crearProducto_precioCambiado_devuelveUnProductoNuevoConElPrecioActual() {
+        MercadonaAdapter.limpiarCache();
+
+        Producto anterior = MercadonaAdapter.crearProducto("4241", "Leche semidesnatada", "Hacendado", "Lácteos", 0.89);
+        Producto actual = MercadonaAdapter.crearProducto("4241", "Leche semidesnatada", "Hacendado", "Lácteos", 0.95);
+
+        assertEquals(0.89, anterior.getPrecio(), 0.001);
+        assertEquals(0.95, actual.getPrecio(), 0.001);
+        assertSame(actual, MercadonaAdapter.crearProducto("4241", "Leche semidesnatada", "Hacendado", "Lácteos", 0.95));
+    }
+
+    @Test
+    void crearProducto_invalido_noSeCachea() {
+        MercadonaAdapter.limpiarCache();
+
+        assertNull(MercadonaAdapter.crearProducto("9999", "", "Hacendado", "Lácteos", 1.0));
+        assertEquals(0, MercadonaAdapter.tamanoCache());
+    }
+}
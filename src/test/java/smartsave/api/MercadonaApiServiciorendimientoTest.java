@@ -11,10 +11,10 @@ import java.util.concurrent.TimeUnit;
 class MercadonaApibusquedasTest {
 
     @Test
-    void ejecutarDiezBusquedas() {
+    void ejecutarDiezBusquedas() throws Exception {
         MercadonaApiServicio servicio = new MercadonaApiServicio("14010");
 
-        if (!servicio.isApiDisponible()) {
+        if (!servicio.esperarDisponibilidad().get(60, TimeUnit.SECONDS)) {
             System.err.println("la api del mercadona no está disponible");
             servicio.cerrar();
             return;
@@ -0,0 +1,77 @@
+package smartsave.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MercadonaBridgeSupervisorTest {
+
+    /**
+     * Hace de mercadona_bridge.py: escribe la señal de listo con el puerto indicado
+     * y se queda vivo, o muere a los pocos milisegundos si se le pide.
+     */
+    public static class PuenteFalso {
+        public static void main(String[] args) throws Exception {
+            if ("sin-senal".equals(args[0])) {
+                System.out.println("ModuleNotFoundError: No module named 'mercapy'");
+                System.exit(1);
+            }
+            System.out.println(MercadonaBridgeSupervisor.SENAL_LISTO + " " + args[1]);
+            System.out.flush();
+            Thread.sleep("morir".equals(args[0]) ? 200 : 30_000);
+            System.exit(3);
+        }
+    }
+
+    private static List<String> comando(String modo, int puerto) {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return List.of(java, "-cp", System.getProperty("java.class.path"),
+                PuenteFalso.class.getName(), modo, String.valueOf(puerto));
+    }
+
+    @Test
+    void senalDeListo_marcaDisponibleYTomaElPuerto() throws Exception {
+        MercadonaBridgeSupervisor supervisor = new MercadonaBridgeSupervisor(() -> comando("vivir", 5123), 50);
+        try {
+            assertTrue(supervisor.iniciar().get(20, TimeUnit.SECONDS));
+            assertTrue(supervisor.isDisponible());
+            assertEquals("http://127.0.0.1:5123", supervisor.getUrlBase());
+        } finally {
+            supervisor.detener();
+        }
+        assertFalse(supervisor.isDisponible());
+    }
+
+    @Test
+    void procesoQueMuereAntesDeEstarListo_noSeReinicia() throws Exception {
+        MercadonaBridgeSupervisor supervisor = new MercadonaBridgeSupervisor(() -> comando("sin-senal", 5124), 50);
+        try {
+            assertFalse(supervisor.iniciar().get(20, TimeUnit.SECONDS));
+            assertFalse(supervisor.isDisponible());
+        } finally {
+            supervisor.detener();
+        }
+    }
+
+    @Test
+    void caidaTrasEstarListo_seReiniciaYVuelveAEstarDisponible() throws Exception {
+        MercadonaBridgeSupervisor supervisor = new MercadonaBridgeSupervisor(() -> comando("morir", 5125), 50);
+        try {
+            assertTrue(supervisor.iniciar().get(20, TimeUnit.SECONDS));
+            long limite = System.currentTimeMillis() + 20_000;
+            //esperar a que el primer proceso muera y se sustituya el futuro por el del reinicio
+            while (supervisor.isDisponible() && System.currentTimeMillis() < limite) {
+                Thread.sleep(20);
+            }
+            assertTrue(supervisor.esperarListo().get(20, TimeUnit.SECONDS));
+        } finally {
+            supervisor.detener();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package smartsave.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MercadonaCircuitBreakerTest {
+
+    private final AtomicLong ahora = new AtomicLong(1_000_000);
+    private final MercadonaCircuitBreaker circuito = new MercadonaCircuitBreaker(ahora::get);
+
+    @Test
+    void muchosFallos_abrenElCircuitoYLaPruebaLoCierra() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(circuito.permitirLlamada());
+            circuito.registrarFallo(100);
+        }
+        assertEquals(MercadonaCircuitBreaker.Estado.ABIERTO, circuito.getEstado());
+        assertFalse(circuito.permitirLlamada());
+
+        ahora.addAndGet(20_000);
+        assertTrue(circuito.permitirLlamada(), "pasado el tiempo de espera se deja pasar una prueba");
+        assertFalse(circuito.permitirLlamada(), "solo una prueba a la vez");
+
+        circuito.registrarExito(100);
+        assertEquals(MercadonaCircuitBreaker.Estado.CERRADO, circuito.getEstado());
+        assertTrue(circuito.permitirLlamada());
+    }
+
+    @Test
+    void pruebaFallida_vuelveAAbrir() {
+        for (int i = 0; i < 10; i++) {
+            circuito.registrarFallo(100);
+        }
+        ahora.addAndGet(20_000);
+        assertTrue(circuito.permitirLlamada());
+        circuito.registrarFallo(100);
+
+        assertEquals(MercadonaCircuitBreaker.Estado.ABIERTO, circuito.getEstado());
+        assertFalse(circuito.admiteLlamadas());
+    }
+
+    @Test
+    void timeout_seDerivaDelP99() {
+        for (int i = 1; i <= 100; i++) {
+            circuito.registrarExito(i * 10);
+        }
+        //la ventana guarda las 50 ultimas: 510..1000 ms
+        assertEquals(1000, circuito.percentilMs(99));
+        assertEquals(1500, circuito.timeoutMs());
+        assertEquals(MercadonaCircuitBreaker.Estado.CERRADO, circuito.getEstado());
+    }
+}
@@ -0,0 +1,67 @@
+package smartsave.api;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class MercadonaDiskCacheTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void guardarYCargar_elUltimoRegistroDeCadaClaveGana() {
+        Path archivo = directorio.resolve("cache.dat");
+        MercadonaDiskCache cache = new MercadonaDiskCache(archivo);
+        long unaHora = TimeUnit.HOURS.toMillis(1);
+
+        cache.guardar("search:leche:14010", bytes("[1]"), unaHora);
+        cache.guardar("search:pan:14010", bytes("[2]"), unaHora);
+        cache.guardar("search:leche:14010", bytes("[3]"), unaHora);
+        cache.guardar("search:sal:14010", bytes("[4]"), -1);
+        cache.cerrar();
+
+        Map<String, MercadonaDiskCache.EntradaDisco> entradas = new MercadonaDiskCache(archivo).cargar();
+
+        assertEquals(2, entradas.size());
+        assertEquals("[3]", texto(entradas.get("search:leche:14010").valor()));
+        assertEquals("[2]", texto(entradas.get("search:pan:14010").valor()));
+        assertFalse(entradas.containsKey("search:sal:14010"), "las entradas caducadas no se cargan");
+    }
+
+    @Test
+    void registroTruncado_seDescartaYLasEscriturasSiguientesSiguenSiendoLegibles() throws Exception {
+        Path archivo = directorio.resolve("cache.dat");
+        MercadonaDiskCache cache = new MercadonaDiskCache(archivo);
+        cache.guardar("search:arroz:14010", bytes("[1]"), TimeUnit.HOURS.toMillis(1));
+        cache.cerrar();
+
+        //simula un cierre brusco a mitad de escritura
+        Files.write(archivo, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        MercadonaDiskCache recuperada = new MercadonaDiskCache(archivo);
+        assertEquals(1, recuperada.cargar().size());
+
+        recuperada.guardar("search:tomate:14010", bytes("[2]"), TimeUnit.HOURS.toMillis(1));
+        recuperada.cerrar();
+
+        assertEquals(2, new MercadonaDiskCache(archivo).cargar().size());
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String texto(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
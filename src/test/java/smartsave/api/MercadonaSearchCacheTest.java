@@ -0,0 +1,56 @@
+package smartsave.api;
+
+import org.junit.jupiter.api.Test;
+import smartsave.modelo.Producto;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MercadonaSearchCacheTest {
+
+    @Test
+    void llamadasConcurrentes_mismaClave_compartenUnaCarga() throws Exception {
+        AtomicInteger cargas = new AtomicInteger();
+        CompletableFuture<List<Producto>> respuestaPendiente = new CompletableFuture<>();
+
+        MercadonaSearchCache cache = new MercadonaSearchCache(clave -> {
+            cargas.incrementAndGet();
+            return respuestaPendiente;
+        }, Runnable::run);
+
+        String clave = MercadonaSearchCache.claveBusqueda("leche", "14010");
+        CompletableFuture<List<Producto>> primera = cache.get(clave);
+        CompletableFuture<List<Producto>> segunda = cache.get(clave);
+
+        respuestaPendiente.complete(List.of(new Producto("Leche entera", "Hacendado", "Lácteos", 0.95, "Mercadona")));
+
+        assertEquals(1, primera.get(1, TimeUnit.SECONDS).size());
+        assertEquals(1, segunda.get(1, TimeUnit.SECONDS).size());
+        assertNotSame(primera.get(), segunda.get(), "cada llamante debe recibir su propia copia");
+        assertEquals(1, cargas.get());
+
+        cache.get(clave).get(1, TimeUnit.SECONDS);
+        assertEquals(1, cache.estadisticas().missCount(), "solo la primera consulta debe ser un fallo");
+        assertEquals(1, cargas.get());
+    }
+
+    @Test
+    void terminoDeClave_recuperaElTerminoOriginal() {
+        String clave = MercadonaSearchCache.claveBusqueda("café: molido", "28001");
+        assertEquals("café: molido", MercadonaSearchCache.terminoDeClave(clave));
+    }
+
+    @Test
+    void estimarBytes_creceConElNumeroDeProductos() {
+        Producto producto = new Producto("Tomate frito", "Hacendado", "Verduras", 0.80, "Mercadona");
+        int uno = MercadonaSearchCache.estimarBytes("search:tomate:14010", List.of(producto));
+        int tres = MercadonaSearchCache.estimarBytes("search:tomate:14010", List.of(producto, producto, producto));
+        assertTrue(tres > uno);
+    }
+}
@@ -0,0 +1,124 @@
+package smartsave.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import smartsave.modelo.Producto;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el parseo de una respuesta de /search pasando por String y JsonNode
+ * con el lector en streaming, en JSON y en CBOR. Se lanza a mano (no es un test de surefire):
+ *
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat cp.txt) smartsave.api.ParseoProductosBenchmark
+ *
+ * La columna gc.alloc.rate.norm da los bytes reservados por respuesta.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseoProductosBenchmark {
+
+    @Param({"25", "250"})
+    int productos;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private LectorRespuestasMercadona lector;
+    private LectorRespuestasMercadona lectorCbor;
+    private byte[] respuesta;
+    private byte[] respuestaCbor;
+
+    @Setup
+    public void preparar() throws IOException {
+        lector = new LectorRespuestasMercadona(objectMapper.getFactory());
+        CBORMapper cborMapper = new CBORMapper();
+        lectorCbor = new LectorRespuestasMercadona(cborMapper.getFactory());
+
+        ArrayNode data = objectMapper.createArrayNode();
+        for (int i = 0; i < productos; i++) {
+            ObjectNode nodo = data.addObject();
+            nodo.put("id", String.valueOf(10000 + i));
+            nodo.put("name", "Producto de prueba número " + i);
+            nodo.put("brand", "Hacendado");
+            nodo.put("category", "Lácteos y huevos");
+            nodo.put("unit_price", new BigDecimal("1.35"));
+            nodo.put("thumbnail", "https://prod-mercadona.imgix.net/images/" + i + ".jpg");
+        }
+        ObjectNode raiz = objectMapper.createObjectNode();
+        raiz.set("data", data);
+        raiz.put("success", true);
+        respuesta = objectMapper.writeValueAsBytes(raiz);
+        respuestaCbor = cborMapper.writeValueAsBytes(raiz);
+    }
+
+    @Benchmark
+    public List<Producto> arbolJsonNode() throws IOException {
+        String json;
+        try (Reader lectorTexto = new InputStreamReader(new ByteArrayInputStream(respuesta), StandardCharsets.UTF_8)) {
+            StringBuilder texto = new StringBuilder();
+            char[] bloque = new char[8192];
+            int leidos;
+            while ((leidos = lectorTexto.read(bloque)) != -1) {
+                texto.append(bloque, 0, leidos);
+            }
+            json = texto.toString();
+        }
+
+        List<Producto> resultado = new ArrayList<>();
+        JsonNode raiz = objectMapper.readTree(json);
+        if (raiz.has("success") && raiz.get("success").asBoolean()) {
+            for (JsonNode nodo : raiz.get("data")) {
+                Producto producto = MercadonaAdapter.convertirNodoAProducto(nodo);
+                if (producto != null) resultado.add(producto);
+            }
+        }
+        return resultado;
+    }
+
+    @Benchmark
+    public List<Producto> streaming() throws IOException {
+        return lector.leerProductos(new ByteArrayInputStream(respuesta));
+    }
+
+    @Benchmark
+    public List<Producto> streamingCbor() throws IOException {
+        return lectorCbor.leerProductos(new ByteArrayInputStream(respuestaCbor));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ParseoProductosBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,86 @@
+package smartsave.api;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransporteUnixTest {
+
+    private TransporteUnix transporte;
+    private ServerSocketChannel servidor;
+
+    @BeforeEach
+    void abrirSocket() throws IOException {
+        transporte = TransporteUnix.enDirectorioTemporal();
+        servidor = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        servidor.bind(UnixDomainSocketAddress.of(transporte.argumentos().get(1)));
+    }
+
+    @AfterEach
+    void cerrarSocket() throws IOException {
+        servidor.close();
+        transporte.liberar();
+    }
+
+    /**
+     * Atiende una conexión: lee la cabecera de la petición y, si hay respuesta, la escribe.
+     */
+    private void atender(String respuesta) {
+        Thread.ofVirtual().start(() -> {
+            try (SocketChannel cliente = servidor.accept()) {
+                ByteBuffer buffer = ByteBuffer.allocate(4096);
+                StringBuilder peticion = new StringBuilder();
+                while (!peticion.toString().contains("\r\n\r\n") && cliente.read(buffer) > 0) {
+                    buffer.flip();
+                    peticion.append(StandardCharsets.US_ASCII.decode(buffer));
+                    buffer.clear();
+                }
+                if (respuesta == null) {
+                    Thread.sleep(2000);
+                    return;
+                }
+                cliente.write(ByteBuffer.wrap(respuesta.getBytes(StandardCharsets.US_ASCII)));
+            } catch (IOException | InterruptedException e) {
+                //el test ya ha terminado
+            }
+        });
+    }
+
+    @Test
+    void peticion_llegaPorElSocketUnix() throws IOException {
+        atender("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: 16\r\n\r\n{\"success\":true}");
+        OkHttpClient cliente = transporte.configurar(new OkHttpClient.Builder()).build();
+
+        try (Response respuesta = cliente.newCall(new Request.Builder().url(transporte.getUrlBase() + "/health").build()).execute()) {
+            assertEquals(200, respuesta.code());
+            assertEquals("{\"success\":true}", respuesta.body().string());
+        }
+    }
+
+    @Test
+    void peticion_sinRespuestaAgotaElTimeoutDeLectura() {
+        atender(null);
+        OkHttpClient cliente = transporte.configurar(new OkHttpClient.Builder())
+                .readTimeout(200, TimeUnit.MILLISECONDS)
+                .build();
+
+        assertThrows(SocketTimeoutException.class, () ->
+                cliente.newCall(new Request.Builder().url(transporte.getUrlBase() + "/health").build()).execute().close());
+    }
+}
@@ -0,0 +1,49 @@
+package smartsave.modelo;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RestriccionesDieteticasTest {
+
+    private static Producto producto(String categoria) {
+        return new Producto("Producto", "Hacendado", categoria, 1.0, "Mercadona");
+    }
+
+    @Test
+    void compilar_ignoraMayusculasYRestriccionesDesconocidas() {
+        assertEquals(RestriccionesDieteticas.GLUTEN | RestriccionesDieteticas.ALTO_EN_AZUCAR,
+                RestriccionesDieteticas.compilar(List.of("SIN GLUTEN", "Bajo en azúcar", "Paleo")));
+        assertEquals(0, RestriccionesDieteticas.compilar(null));
+    }
+
+    @Test
+    void cumpleRestricciones_porCategoria() {
+        assertFalse(producto("Lácteos").cumpleRestricciones(List.of("Sin lactosa")));
+        assertFalse(producto("Lácteos").cumpleRestricciones(List.of("Vegano")));
+        assertTrue(producto("Lácteos").cumpleRestricciones(List.of("Vegetariano")));
+        assertFalse(producto("Pan de molde").cumpleRestricciones(List.of("Sin gluten")));
+        assertFalse(producto("Huevos").cumpleRestricciones(List.of("Vegano")));
+        assertTrue(producto("Frutas").cumpleRestricciones(List.of("Vegano", "Sin gluten", "Sin lactosa")));
+    }
+
+    @Test
+    void cumpleRestricciones_porNutricionYSeRecalculaAlCambiar() {
+        Producto producto = producto("Aperitivos");
+        Producto.NutricionProducto info = new Producto.NutricionProducto();
+        info.setSodioBD(BigDecimal.valueOf(800));
+        producto.setInfoNutricional(info);
+        assertFalse(producto.cumpleRestricciones(List.of("Bajo en sodio")));
+
+        producto.setInfoNutricional(new Producto.NutricionProducto());
+        assertTrue(producto.cumpleRestricciones(List.of("Bajo en sodio")));
+
+        producto.setCategoria("Carnes");
+        assertFalse(producto.cumpleRestricciones(List.of("Vegetariano")));
+    }
+}
@@ -0,0 +1,83 @@
+package smartsave.servicio;
+
+import org.junit.jupiter.api.Test;
+import smartsave.modelo.Producto;
+import smartsave.modelo.RestriccionesDieteticas;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CatalogoColumnarTest {
+
+    private static Producto producto(long id, String categoria, double precio, double proteinas) {
+        Producto producto = new Producto("Producto " + id, "Hacendado", categoria, precio, "Mercadona");
+        producto.setId(id);
+        Producto.NutricionProducto info = new Producto.NutricionProducto();
+        info.setProteinasBD(BigDecimal.valueOf(proteinas));
+        producto.setInfoNutricional(info);
+        return producto;
+    }
+
+    @Test
+    void instantanea_tieneLasColumnasDeCadaProducto() {
+        CatalogoColumnar catalogo = new CatalogoColumnar(List.of(
+                producto(1, "Lácteos", 0.89, 3.2),
+                producto(2, "Carnes", 5.50, 20),
+                producto(3, "Lácteos", 1.20, 4)));
+
+        CatalogoColumnar.Instantanea instantanea = catalogo.instantanea();
+
+        assertEquals(3, instantanea.tamano());
+        assertArrayEquals(new long[]{1, 2, 3}, instantanea.ids());
+        assertArrayEquals(new double[]{0.89, 5.50, 1.20}, instantanea.precios(), 0.001);
+        assertArrayEquals(new double[]{3.2, 20, 4}, instantanea.proteinas(), 0.001);
+        int lacteos = instantanea.codigoCategoria("Lácteos");
+        assertEquals(lacteos, instantanea.categorias()[0]);
+        assertEquals(lacteos, instantanea.categorias()[2]);
+        assertEquals(-1, instantanea.codigoCategoria("Frutas"));
+        assertSame(instantanea, catalogo.instantanea());
+    }
+
+    @Test
+    void filasCompatibles_filtraPorMascara() {
+        CatalogoColumnar catalogo = new CatalogoColumnar(List.of(
+                producto(1, "Lácteos", 0.89, 3.2),
+                producto(2, "Carnes", 5.50, 20),
+                producto(3, "Frutas", 1.20, 1)));
+
+        int prohibido = RestriccionesDieteticas.compilar(List.of("Vegano"));
+
+        assertArrayEquals(new int[]{2}, catalogo.instantanea().filasCompatibles(prohibido));
+    }
+
+    @Test
+    void actualizarYEliminar_cambianSoloSusFilas() {
+        CatalogoColumnar catalogo = new CatalogoColumnar(List.of(
+                producto(1, "Lácteos", 0.89, 3.2),
+                producto(2, "Carnes", 5.50, 20),
+                producto(3, "Frutas", 1.20, 1)));
+        CatalogoColumnar.Instantanea anterior = catalogo.instantanea();
+
+        catalogo.actualizar(producto(2, "Carnes", 4.99, 20));
+        catalogo.eliminar(1L);
+        catalogo.actualizar(producto(4, "Verduras", 0.75, 2));
+        CatalogoColumnar.Instantanea nueva = catalogo.instantanea();
+
+        assertEquals(3, nueva.tamano());
+        //la ultima fila ocupa el hueco de la eliminada
+        assertArrayEquals(new long[]{3, 2, 4}, nueva.ids());
+        assertArrayEquals(new double[]{1.20, 4.99, 0.75}, nueva.precios(), 0.001);
+        //las instantaneas ya entregadas no cambian
+        assertArrayEquals(new long[]{1, 2, 3}, anterior.ids());
+        assertEquals(5.50, anterior.precios()[1], 0.001);
+
+        Producto retirado = producto(3, "Frutas", 1.20, 1);
+        retirado.setDisponible(false);
+        catalogo.actualizar(retirado);
+        assertArrayEquals(new long[]{4, 2}, catalogo.instantanea().ids());
+    }
+}
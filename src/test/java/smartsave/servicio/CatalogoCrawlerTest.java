@@ -0,0 +1,149 @@
+package smartsave.servicio;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import smartsave.modelo.Producto;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogoCrawlerTest {
+
+    private Connection conexion;
+
+    @BeforeEach
+    void crearTabla() throws SQLException {
+        //misma forma que la tabla que genera Hibernate para Producto
+        conexion = DriverManager.getConnection("jdbc:h2:mem:catalogo;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement sentencia = conexion.createStatement()) {
+            sentencia.execute("CREATE TABLE productos (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                    "nombre VARCHAR(255) NOT NULL, marca VARCHAR(255) NOT NULL, categoria VARCHAR(255) NOT NULL, " +
+                    "precio NUMERIC(10,2) NOT NULL, supermercado VARCHAR(255) NOT NULL, disponible BOOLEAN NOT NULL, " +
+                    "calorias NUMERIC(8,2), proteinas NUMERIC(8,2), carbohidratos NUMERIC(8,2), grasas NUMERIC(8,2), " +
+                    "fibra NUMERIC(8,2), sodio NUMERIC(8,2), azucares NUMERIC(8,2), " +
+                    "ultima_vez_visto TIMESTAMP(6), ultimo_cambio_precio TIMESTAMP(6))");
+        }
+    }
+
+    @AfterEach
+    void borrarTabla() throws SQLException {
+        try (Statement sentencia = conexion.createStatement()) {
+            sentencia.execute("DROP TABLE productos");
+        }
+        conexion.close();
+    }
+
+    private static Producto producto(long id, double precio) {
+        Producto producto = new Producto("Leche entera", "Hacendado", "Lácteos", precio, "Mercadona");
+        producto.setId(id);
+        return producto;
+    }
+
+    @Test
+    void guardarLote_soloFechaElCambioDePrecioCuandoCambia() throws SQLException {
+        LocalDateTime primeraVisita = LocalDateTime.of(2024, 1, 1, 10, 0);
+        LocalDateTime segundaVisita = primeraVisita.plusDays(1);
+        LocalDateTime terceraVisita = primeraVisita.plusDays(2);
+
+        assertEquals(2, CatalogoCrawler.guardarLote(conexion, List.of(producto(71001, 0.95), producto(71002, 1.20)), primeraVisita).size());
+        CatalogoCrawler.guardarLote(conexion, List.of(producto(71001, 0.95)), segundaVisita);
+        CatalogoCrawler.guardarLote(conexion, List.of(producto(71002, 1.35)), terceraVisita);
+
+        try (Statement sentencia = conexion.createStatement();
+             ResultSet filas = sentencia.executeQuery("SELECT id, precio, ultima_vez_visto, ultimo_cambio_precio FROM productos ORDER BY id")) {
+            assertTrue(filas.next());
+            assertEquals(segundaVisita, filas.getObject("ultima_vez_visto", LocalDateTime.class));
+            assertEquals(primeraVisita, filas.getObject("ultimo_cambio_precio", LocalDateTime.class));
+
+            assertTrue(filas.next());
+            assertEquals(1.35, filas.getBigDecimal("precio").doubleValue(), 0.001);
+            assertEquals(terceraVisita, filas.getObject("ultimo_cambio_precio", LocalDateTime.class));
+            assertFalse(filas.next());
+        }
+    }
+
+    @Test
+    void guardarLote_guardaYRefrescaLaInformacionNutricional() throws SQLException {
+        LocalDateTime visita = LocalDateTime.of(2024, 1, 1, 10, 0);
+        Producto leche = producto(71001, 0.95);
+        leche.setInfoNutricional(new Producto.NutricionProducto(60, 3.2, 4.7, 3.6, 0, 50, 4.7));
+        CatalogoCrawler.guardarLote(conexion, List.of(leche), visita);
+
+        try (Statement sentencia = conexion.createStatement();
+             ResultSet filas = sentencia.executeQuery("SELECT calorias, proteinas, sodio FROM productos WHERE id = 71001")) {
+            assertTrue(filas.next());
+            assertEquals(60, filas.getBigDecimal("calorias").doubleValue(), 0.001);
+            assertEquals(3.2, filas.getBigDecimal("proteinas").doubleValue(), 0.001);
+            assertEquals(50, filas.getBigDecimal("sodio").doubleValue(), 0.001);
+        }
+
+        leche.getInfoNutricional().setCalorias(65);
+        CatalogoCrawler.guardarLote(conexion, List.of(leche), visita.plusDays(1));
+
+        try (Statement sentencia = conexion.createStatement();
+             ResultSet filas = sentencia.executeQuery("SELECT calorias FROM productos WHERE id = 71001")) {
+            assertTrue(filas.next());
+            assertEquals(65, filas.getBigDecimal("calorias").doubleValue(), 0.001);
+        }
+    }
+
+    @Test
+    void guardarLote_noPisaProductosLocalesConElMismoId() throws SQLException {
+        try (Statement sentencia = conexion.createStatement()) {
+            sentencia.execute("INSERT INTO productos (id, nombre, marca, categoria, precio, supermercado, disponible) " +
+                    "VALUES (71001, 'Leche de la casa', 'Casa', 'Lácteos', 2.00, 'Local', TRUE)");
+        }
+
+        assertTrue(CatalogoCrawler.guardarLote(conexion, List.of(producto(71001, 0.95)), LocalDateTime.now()).isEmpty());
+
+        try (Statement sentencia = conexion.createStatement();
+             ResultSet filas = sentencia.executeQuery("SELECT nombre, supermercado, precio FROM productos WHERE id = 71001")) {
+            assertTrue(filas.next());
+            assertEquals("Leche de la casa", filas.getString("nombre"));
+            assertEquals("Local", filas.getString("supermercado"));
+            assertEquals(2.00, filas.getBigDecimal("precio").doubleValue(), 0.001);
+        }
+    }
+
+    @Test
+    void reservarIdsLocales_losIdsGeneradosNoChocanConLosDeMercadona() throws SQLException {
+        CatalogoCrawler.guardarLote(conexion, List.of(producto(1, 0.95), producto(2, 1.20)), LocalDateTime.now());
+        CatalogoCrawler.reservarIdsLocales(conexion);
+
+        try (Statement sentencia = conexion.createStatement()) {
+            sentencia.execute("INSERT INTO productos (nombre, marca, categoria, precio, supermercado, disponible) " +
+                    "VALUES ('Pan casero', 'Casa', 'Panadería', 1.50, 'Local', TRUE)");
+            try (ResultSet filas = sentencia.executeQuery("SELECT id FROM productos WHERE supermercado = 'Local'")) {
+                assertTrue(filas.next());
+                assertEquals(CatalogoCrawler.PRIMER_ID_LOCAL, filas.getLong("id"));
+            }
+        }
+    }
+
+    @Test
+    void marcarNoVistos_retiraLosProductosQueNoAparecenEnElCiclo() throws SQLException {
+        LocalDateTime cicloAnterior = LocalDateTime.of(2024, 1, 1, 10, 0);
+        LocalDateTime cicloActual = cicloAnterior.plusDays(1);
+        CatalogoCrawler.guardarLote(conexion, List.of(producto(71001, 0.95), producto(71002, 1.20)), cicloAnterior);
+        CatalogoCrawler.guardarLote(conexion, List.of(producto(71001, 0.95)), cicloActual);
+
+        assertEquals(1, CatalogoCrawler.marcarNoVistos(conexion, cicloActual));
+
+        try (Statement sentencia = conexion.createStatement();
+             ResultSet filas = sentencia.executeQuery("SELECT id FROM productos WHERE disponible = TRUE")) {
+            assertTrue(filas.next());
+            assertEquals(71001L, filas.getLong("id"));
+            assertFalse(filas.next());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package smartsave.servicio;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import smartsave.modelo.Producto;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndiceBusquedaProductosTest {
+
+    private IndiceBusquedaProductos indice;
+
+    private static Producto producto(long id, String nombre, String marca, String categoria) {
+        Producto producto = new Producto(nombre, marca, categoria, 1.0, "Mercadona");
+        producto.setId(id);
+        return producto;
+    }
+
+    @BeforeEach
+    void crearIndice() {
+        indice = new IndiceBusquedaProductos(() -> List.of(
+                producto(1, "Leche semidesnatada", "Hacendado", "Lácteos"),
+                producto(2, "Yogur natural", "Hacendado", "Lácteos"),
+                producto(3, "Pan de molde", "Bimbo", "Panadería"),
+                producto(4, "Café molido", "Hacendado", "Desayuno")));
+    }
+
+    private List<Long> ids(String consulta) {
+        return indice.buscar(consulta, 10).stream().map(Producto::getId).sorted().toList();
+    }
+
+    @Test
+    void buscar_ignoraTildesYMayusculas() {
+        assertEquals(List.of(1L, 2L), ids("lacteos"));
+        assertEquals(List.of(4L), ids("CAFÉ"));
+        assertEquals(List.of(4L), ids("cafe"));
+    }
+
+    @Test
+    void buscar_porPrefijoYDentroDeLaPalabra() {
+        assertEquals(List.of(1L), ids("le"));
+        assertEquals(List.of(1L), ids("desnat"));
+        assertEquals(List.of(3L, 4L), ids("mol"));
+        assertTrue(ids("zz").isEmpty());
+    }
+
+    @Test
+    void buscar_exigeTodasLasPalabras() {
+        assertEquals(List.of(1L), ids("hacendado leche"));
+        assertTrue(ids("bimbo leche").isEmpty());
+    }
+
+    @Test
+    void buscar_primeroLosQueEmpiezanPorElTermino() {
+        indice.actualizar(producto(5, "Bebida de avena", "Hacendado", "Bebidas vegetales"));
+
+        List<Producto> resultado = indice.buscar("ave", 10);
+
+        assertEquals(5L, resultado.get(0).getId());
+    }
+
+    @Test
+    void actualizar_reindexaYQuitaLosNoDisponibles() {
+        Producto renombrado = producto(2, "Kéfir natural", "Hacendado", "Lácteos");
+        indice.actualizar(renombrado);
+        assertTrue(ids("yogur").isEmpty());
+        assertEquals(List.of(2L), ids("kefir"));
+
+        renombrado.setDisponible(false);
+        indice.actualizar(renombrado);
+        assertTrue(ids("kefir").isEmpty());
+        assertEquals(List.of(1L), ids("lacteos"));
+    }
+}
@@ -0,0 +1,81 @@
+package smartsave.utilidad;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import smartsave.modelo.Producto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara ordenar todo el catálogo por precio y cortar el tramo de la modalidad
+ * (como hacía ProductoServicio.buscarProductos) con SeleccionUtil. Se lanza a mano:
+ *
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat cp.txt) smartsave.utilidad.SeleccionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeleccionBenchmark {
+
+    @Param({"1000", "20000", "50000"})
+    int productos;
+
+    private List<Producto> catalogo;
+
+    @Setup
+    public void preparar() {
+        Random random = new Random(42);
+        catalogo = new ArrayList<>(productos);
+        for (int i = 0; i < productos; i++) {
+            catalogo.add(new Producto("Producto " + i, "Marca", "Categoria", random.nextInt(2000) / 100.0 + 0.5, "Mercadona"));
+        }
+    }
+
+    @Benchmark
+    public List<Producto> equilibradoOrdenandoTodo() {
+        List<Producto> copia = new ArrayList<>(catalogo);
+        copia.sort(Comparator.comparing(Producto::getPrecio));
+        return copia.subList((int) (productos * 0.20), (int) (productos * 0.80));
+    }
+
+    @Benchmark
+    public List<Producto> equilibradoSeleccionando() {
+        return SeleccionUtil.rangoOrdenado(catalogo, Producto::getPrecio, (int) (productos * 0.20), (int) (productos * 0.80));
+    }
+
+    @Benchmark
+    public Producto masBaratoOrdenandoTodo() {
+        List<Producto> copia = new ArrayList<>(catalogo);
+        copia.sort(Comparator.comparing(Producto::getPrecio));
+        return copia.get(0);
+    }
+
+    @Benchmark
+    public Producto masBaratoSeleccionando() {
+        return SeleccionUtil.minimo(catalogo, Producto::getPrecio);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SeleccionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,64 @@
+package smartsave.utilidad;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeleccionUtilTest {
+
+    private record Articulo(int id, double precio) {}
+
+    private static List<Articulo> aleatorios(int n, long semilla) {
+        Random random = new Random(semilla);
+        List<Articulo> articulos = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            //pocos precios distintos para que haya muchos empates
+            articulos.add(new Articulo(i, random.nextInt(20) / 2.0));
+        }
+        return articulos;
+    }
+
+    @Test
+    void rangoOrdenado_coincideConOrdenarYCortar() {
+        for (int n : new int[]{1, 7, 100, 1000}) {
+            List<Articulo> articulos = aleatorios(n, n);
+            List<Articulo> ordenados = new ArrayList<>(articulos);
+            ordenados.sort(Comparator.comparingDouble(Articulo::precio));
+
+            int[][] tramos = {{0, n}, {0, n / 2}, {n / 5, n * 4 / 5}, {n / 2, n}, {n - 1, n}};
+            for (int[] tramo : tramos) {
+                if (tramo[0] >= tramo[1]) continue;
+                assertEquals(ordenados.subList(tramo[0], tramo[1]),
+                        SeleccionUtil.rangoOrdenado(articulos, Articulo::precio, tramo[0], tramo[1]),
+                        "n=" + n + " tramo " + tramo[0] + "-" + tramo[1]);
+            }
+        }
+    }
+
+    @Test
+    void rangoOrdenado_ajustaLosLimites() {
+        List<Articulo> articulos = aleatorios(3, 1);
+
+        assertEquals(3, SeleccionUtil.rangoOrdenado(articulos, Articulo::precio, 0, 5).size());
+        assertTrue(SeleccionUtil.rangoOrdenado(articulos, Articulo::precio, 2, 1).isEmpty());
+        assertTrue(SeleccionUtil.rangoOrdenado(List.<Articulo>of(), Articulo::precio, 0, 5).isEmpty());
+    }
+
+    @Test
+    void minimoYMaximo_devuelvenElPrimeroDeLosEmpatados() {
+        List<Articulo> articulos = List.of(new Articulo(1, 2.0), new Articulo(2, 1.0), new Articulo(3, 1.0),
+                new Articulo(4, 3.0), new Articulo(5, 3.0));
+
+        assertSame(articulos.get(1), SeleccionUtil.minimo(articulos, Articulo::precio));
+        assertSame(articulos.get(3), SeleccionUtil.maximo(articulos, Articulo::precio));
+        assertNull(SeleccionUtil.minimo(List.<Articulo>of(), Articulo::precio));
+    }
+}